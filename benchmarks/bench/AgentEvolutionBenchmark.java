@@ -0,0 +1,131 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.random.RandomGenerator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// AgentEvolution operators and a full engine generation
+// run with "java -jar target/benchmarks.jar AgentEvolution -prof gc" to also
+// get the allocation rate
+// the forks get the Vector API module, add -jvmArgsAppend -Devolution.vector=false
+// to measure the scalar fallback of LockstepEvaluator
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class AgentEvolutionBenchmark {
+
+    private static final MethodHandle WORLD_GENERATE = Engines.method(Engines.AGENT_EVOLUTION, "worldGenerate",
+            int[].class, int.class, int.class);
+    private static final MethodHandle WORLD_FIX = Engines.method(Engines.AGENT_EVOLUTION, "worldFix",
+            int[].class, int[].class);
+    private static final MethodHandle FIRST_AGENT_GENERATE = Engines.method(Engines.AGENT_EVOLUTION,
+            "firstAgentGenerate", int[].class, int.class, int.class);
+    private static final MethodHandle EVALUATION = Engines.method(Engines.AGENT_EVOLUTION, "evaluation",
+            int.class, int[].class, int[].class);
+    private static final MethodHandle COMPILE = Engines.method(Engines.TRANSITION_TABLE, "compile",
+            Engines.TRANSITION_TABLE, int[].class).asType(MethodType.methodType(Object.class, int[].class));
+    private static final MethodHandle TABLE_EVALUATION = Engines.method(Engines.AGENT_EVOLUTION, "evaluation",
+            int.class, Engines.TRANSITION_TABLE, int[].class)
+            .asType(MethodType.methodType(int.class, Object.class, int[].class));
+    private static final MethodHandle LOCKSTEP_EVALUATION = Engines.method(Engines.LOCKSTEP_EVALUATOR, "evaluate",
+            int[].class, int[].class, int[][].class);
+    private static final MethodHandle CROSSOVER = Engines.method(Engines.AGENT_EVOLUTION, "crossover",
+            int[].class, int[].class, int[].class, RandomGenerator.class);
+    private static final MethodHandle MUTATE = Engines.method(Engines.AGENT_EVOLUTION, "mutate",
+            void.class, int[].class, double.class, RandomGenerator.class);
+    private static final MethodHandle EVOLVE_PARALLEL = Engines.method(Engines.AGENT_EVOLUTION, "evolveParallel",
+            int[][].class, int[][].class, int[].class, int.class, double.class, long.class, int.class,
+            Engines.EVOLUTION_OPTIONS).asType(MethodType.methodType(int[][].class, int[][].class, int[].class,
+                    int.class, double.class, long.class, int.class, Object.class));
+
+    @Param({ "100", "1000" })
+    public int worldSize;
+
+    @Param({ "100", "1000" })
+    public int populationSize;
+
+    @Param({ "0.01", "0.05" })
+    public double mutationRate;
+
+    private int[] world;
+    private Object compiledWorld;
+    private int[][] population;
+    private Random rand;
+    private Object options;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws Throwable {
+        world = (int[]) WORLD_FIX.invokeExact((int[]) WORLD_GENERATE.invokeExact(worldSize, 42));
+        compiledWorld = (Object) COMPILE.invokeExact(world);
+
+        // agents get 10 moves per world cell, like in main
+        population = new int[populationSize][];
+        for (int i = 0; i < populationSize; i++) {
+            population[i] = (int[]) FIRST_AGENT_GENERATE.invokeExact(42 + i, worldSize * 10);
+        }
+        rand = new Random(42);
+        options = Engines.headlessOptions();
+    }
+
+    // next agent of the population, so every call sees a different genome
+    private int[] nextAgent() {
+        next = next + 1 == populationSize ? 0 : next + 1;
+        return population[next];
+    }
+
+    @Benchmark
+    public int evaluation() throws Throwable {
+        return (int) EVALUATION.invokeExact(world, nextAgent());
+    }
+
+    @Benchmark
+    public int evaluationTable() throws Throwable {
+        return (int) TABLE_EVALUATION.invokeExact(compiledWorld, nextAgent());
+    }
+
+    // the whole population per call, compare with evaluation() x populationSize
+    @Benchmark
+    public int[] evaluationLockstep() throws Throwable {
+        return (int[]) LOCKSTEP_EVALUATION.invokeExact(world, population);
+    }
+
+    @Benchmark
+    public int[] crossover() throws Throwable {
+        return (int[]) CROSSOVER.invokeExact(nextAgent(), nextAgent(), (RandomGenerator) rand);
+    }
+
+    @Benchmark
+    public int[] mutate() throws Throwable {
+        int[] genome = nextAgent();
+        MUTATE.invokeExact(genome, mutationRate, (RandomGenerator) rand);
+        return genome;
+    }
+
+    // one generation of the GeneticEngine run of the program on one thread:
+    // the population is evaluated, bred and its children evaluated
+    // every call breeds from the population of setup, not from the result of
+    // the call before, so the work per call does not drift as it converges
+    @Benchmark
+    public int[][] evolveGeneration() throws Throwable {
+        return (int[][]) EVOLVE_PARALLEL.invokeExact(population, world, 1, mutationRate, 42L, 1, options);
+    }
+}
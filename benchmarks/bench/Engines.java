@@ -0,0 +1,52 @@
+package bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+// the evolution programs are in the default package, which cannot be imported,
+// so the benchmarks call them through method handles
+// handles stored in static final fields are inlined by the JIT like direct calls
+final class Engines {
+
+    static final Class<?> AGENT_EVOLUTION = load("AgentEvolution");
+    static final Class<?> LEVEL_EVOLUTION = load("LevelEvolution");
+    static final Class<?> TRANSITION_TABLE = load("TransitionTable");
+    static final Class<?> LOCKSTEP_EVALUATOR = load("LockstepEvaluator");
+    static final Class<?> EVOLUTION_OPTIONS = load("EvolutionOptions");
+
+    private Engines() {
+    }
+
+    static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("evolution class " + name + " is not on the class path", e);
+        }
+    }
+
+    // public static method owner.name(params) returning returnType
+    static MethodHandle method(Class<?> owner, String name, Class<?> returnType, Class<?>... params) {
+        try {
+            return MethodHandles.publicLookup().findStatic(owner, name, MethodType.methodType(returnType, params));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("missing " + owner.getName() + "." + name, e);
+        }
+    }
+
+    // EvolutionOptions of a headless run whose statistics go nowhere, so a
+    // benchmarked run neither prints nor opens windows
+    static Object headlessOptions() {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Object options = lookup.findConstructor(EVOLUTION_OPTIONS, MethodType.methodType(void.class)).invoke();
+            return lookup.findVirtual(EVOLUTION_OPTIONS, "stats", MethodType.methodType(EVOLUTION_OPTIONS,
+                    PrintStream.class)).invoke(options, new PrintStream(OutputStream.nullOutputStream()));
+        } catch (Throwable e) {
+            throw new IllegalStateException("cannot create headless EvolutionOptions", e);
+        }
+    }
+}
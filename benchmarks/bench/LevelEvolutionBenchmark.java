@@ -0,0 +1,89 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// LevelEvolution fitness, selection and a full evolveWorlds generation
+// run with "java -jar target/benchmarks.jar LevelEvolution -prof gc" to also
+// get the allocation rate
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LevelEvolutionBenchmark {
+
+    private static final MethodHandle GENERATE_WORLD_GENOME = Engines.method(Engines.LEVEL_EVOLUTION,
+            "generateWorldGenome", int[].class, int.class, int.class);
+    private static final MethodHandle EVALUATE_WORLD = Engines.method(Engines.LEVEL_EVOLUTION, "evaluateWorld",
+            double.class, int[].class);
+    private static final MethodHandle TOURNAMENT_SELECT = Engines.method(Engines.LEVEL_EVOLUTION,
+            "tournamentSelect", int.class, double[].class, int.class, Random.class);
+    private static final MethodHandle EVOLVE_WORLDS = Engines.method(Engines.LEVEL_EVOLUTION, "evolveWorlds",
+            int[][].class, int[][].class, int.class, double.class, long.class, int.class, Engines.EVOLUTION_OPTIONS)
+            .asType(MethodType.methodType(int[][].class, int[][].class, int.class, double.class, long.class,
+                    int.class, Object.class));
+
+    @Param({ "100", "1000" })
+    public int worldSize;
+
+    @Param({ "100", "1000" })
+    public int populationSize;
+
+    @Param({ "0.01", "0.05" })
+    public double mutationRate;
+
+    private int[][] population;
+    private double[] fitness;
+    private Random rand;
+    private Object options;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws Throwable {
+        population = new int[populationSize][];
+        fitness = new double[populationSize];
+        for (int i = 0; i < populationSize; i++) {
+            population[i] = (int[]) GENERATE_WORLD_GENOME.invokeExact(42 + i, worldSize);
+            fitness[i] = (double) EVALUATE_WORLD.invokeExact(population[i]);
+        }
+        rand = new Random(42);
+        options = Engines.headlessOptions();
+    }
+
+    @Benchmark
+    public double evaluateWorld() throws Throwable {
+        next = next + 1 == populationSize ? 0 : next + 1;
+        return (double) EVALUATE_WORLD.invokeExact(population[next]);
+    }
+
+    // tournament size 5, as used by evolveWorlds
+    @Benchmark
+    public int tournamentSelect() throws Throwable {
+        return (int) TOURNAMENT_SELECT.invokeExact(fitness, 5, rand);
+    }
+
+    // one generation of the GeneticEngine run of the program on one thread,
+    // from the population of setup every call, like
+    // AgentEvolutionBenchmark.evolveGeneration
+    @Benchmark
+    public int[][] evolveWorldsGeneration() throws Throwable {
+        return (int[][]) EVOLVE_WORLDS.invokeExact(population, 1, mutationRate, 42L, 1, options);
+    }
+}
@@ -0,0 +1,72 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// per-generation ranking: the boxed Integer[] sort the engines used before
+// against Selection's partial selection of the better half and the elites
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SelectionBenchmark {
+
+    private static final Class<?> SELECTION = Engines.load("Selection");
+    private static final MethodHandle IDENTITY = Engines.method(SELECTION, "identity", int[].class, int[].class,
+            int.class);
+    private static final MethodHandle PARTITION_TOP = Engines.method(SELECTION, "partitionTop", void.class,
+            double[].class, int[].class, int.class, int.class);
+    private static final MethodHandle SELECT_TOP = Engines.method(SELECTION, "selectTop", void.class,
+            double[].class, int[].class, int.class, int.class);
+
+    @Param({ "10000", "1000000" })
+    public int populationSize;
+
+    private double[] fitness;
+    private int[] order;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // agent-like fitness: few distinct values, many ties
+        SplittableRandom rand = new SplittableRandom(42);
+        fitness = new double[populationSize];
+        for (int i = 0; i < populationSize; i++) {
+            fitness[i] = rand.nextInt(1000);
+        }
+        order = new int[populationSize];
+    }
+
+    @Benchmark
+    public Integer[] boxedSort() {
+        Integer[] indices = new Integer[populationSize];
+        for (int i = 0; i < populationSize; i++)
+            indices[i] = i;
+        Arrays.sort(indices, (a, b) -> Double.compare(fitness[b], fitness[a]));
+        return indices;
+    }
+
+    @Benchmark
+    public int[] halfAndElites() throws Throwable {
+        int[] o = (int[]) IDENTITY.invokeExact(order, populationSize);
+        PARTITION_TOP.invokeExact(fitness, o, populationSize, populationSize / 2);
+        SELECT_TOP.invokeExact(fitness, o, populationSize / 2, populationSize / 10);
+        return o;
+    }
+}
@@ -1,4 +1,12 @@
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.random.RandomGenerator;
+import java.util.stream.IntStream;
 import javax.swing.*;
 import java.awt.*;
 
@@ -18,6 +26,31 @@ public class AgentEvolution {
             seed = sc.nextInt();
         }
 
+        int[] WORLD;
+
+        if (manually == 1) {
+            WORLD = new int[size];
+            System.out.println("Create the level: 0 - no obstacle, 1 - bush, 2 - bird");
+            for (int i = 0; i < size; i++) {
+                WORLD[i] = sc.nextInt();
+            }
+        } else {
+            WORLD = worldGenerate(size, seed);
+        }
+
+        /*
+         * helper print function to test
+         * for (int i = 0; i < size; i++) {
+         * System.out.print(WORLD[i] + " ");
+         * }
+         * System.out.println("");
+         */
+
+        return WORLD;
+    }
+
+    // randomly generate a world of the given size from a seed
+    public static int[] worldGenerate(int size, int seed) {
         Random rand = new Random(seed);
         int[] WORLD = new int[size];
 
@@ -32,32 +65,17 @@ public class AgentEvolution {
          * we dont want obstacles everywhere
          */
 
-        if (manually == 1) {
-            System.out.println("Create the level: 0 - no obstacle, 1 - bush, 2 - bird");
-            for (int i = 0; i < size; i++) {
-                WORLD[i] = sc.nextInt();
-            }
-        } else {
-            for (int i = 0; i < size; i++) {
-                if (rand.nextInt(10) < 5) {
-                    WORLD[i] = 0;
-                } else if (rand.nextInt(10) < 5) {
-                    WORLD[i] = 1;
+        for (int i = 0; i < size; i++) {
+            if (rand.nextInt(10) < 5) {
+                WORLD[i] = 0;
+            } else if (rand.nextInt(10) < 5) {
+                WORLD[i] = 1;
 
-                } else {
-                    WORLD[i] = 2;
-                }
+            } else {
+                WORLD[i] = 2;
             }
         }
 
-        /*
-         * helper print function to test
-         * for (int i = 0; i < size; i++) {
-         * System.out.print(WORLD[i] + " ");
-         * }
-         * System.out.println("");
-         */
-
         return WORLD;
     }
 
@@ -139,116 +157,268 @@ public class AgentEvolution {
         return position;
     }
 
+    // same as evaluation, using a world compiled with TransitionTable.compile
+    // this does one table lookup per move instead of the checks above
+    public static int evaluation(TransitionTable world, int[] agentMoves) {
+        return world.evaluate(agentMoves);
+    }
+
+    // same as evaluation, for a genome packed as bytes at genes[offset..offset+length)
+    public static int evaluation(int[] world, byte[] genes, int offset, int length) {
+        int position = 0;
+        int height = 0;
+
+        for (int i = offset; i < offset + length; i++) {
+            if (position + 1 == world.length) {
+                return position;
+            }
+
+            int move = genes[i];
+            if (move == 1) {
+                if (world[position + 1] != 1 + height) {
+                    position++;
+                }
+            } else if (move == 2) {
+                if (height == 1 && world[position] != 1) {
+                    height = 0;
+                }
+            } else if (move == 3) {
+                if (position != 0 && world[position - 1] != 1 + height) {
+                    position--;
+                }
+            } else if (move == 4) {
+                if (height == 0 && world[position] != 2) {
+                    height = 1;
+                }
+            }
+        }
+
+        return position;
+    }
+
     // perform crossover between two parent genomes
     // to produce a child genome
-    public static int[] crossover(int[] parent1, int[] parent2, Random rand) {
+    public static int[] crossover(int[] parent1, int[] parent2, RandomGenerator rand) {
         int length = parent1.length;
         int crossoverPoint = rand.nextInt(length);
 
         int[] child = new int[length];
-        for (int i = 0; i < length; i++) {
-            if (i < crossoverPoint) {
-                child[i] = parent1[i];
-            } else {
-                child[i] = parent2[i];
-            }
-        }
+        GeneticOps.onePoint(parent1, parent2, child, crossoverPoint);
         return child;
     }
 
     // mutate a genome with given mutation rate
-    public static void mutate(int[] genome, double mutationRate, Random rand) {
-        for (int i = 0; i < genome.length; i++) {
-            if (rand.nextDouble() < mutationRate) {
-                // mutate to a random move (0-4)
-                genome[i] = rand.nextInt(5);
-            }
-        }
+    // mutated genes get a random move (0-4), the mutation sites are sampled
+    // by geometric skipping (see GeneticOps)
+    public static void mutate(int[] genome, double mutationRate, RandomGenerator rand) {
+        GeneticOps.mutate(genome, 0, genome.length, mutationRate, 5, rand);
+    }
+
+    // crossover of two genomes of the current generation, written straight
+    // into slot "child" of the next generation, returns the crossover point
+    public static int crossover(GenomeArena arena, int parent1, int parent2, int child, RandomGenerator rand) {
+        int crossoverPoint = rand.nextInt(arena.genomeLength());
+        arena.crossoverToNext(parent1, parent2, crossoverPoint, child);
+        return crossoverPoint;
+    }
+
+    // mutate slot "child" of the next generation in place, returns the first
+    // mutated gene (genome length if none)
+    public static int mutate(GenomeArena arena, int child, double mutationRate, RandomGenerator rand) {
+        return arena.mutateNext(child, mutationRate, 5, false, rand);
     }
 
     public static int[][] evolve(int[][] population, int[] world, int generations, double mutationRate, Random rand) {
-        int populationSize = population.length;
-        int genomeLength = population[0].length;
+        return evolve(population, world, generations, mutationRate, rand, new EvolutionOptions());
+    }
 
-        int[] avgPerGen = new int[generations]; // store average position per generation
-        int[] bestPerGen = new int[generations];
-        int[] worstPerGen = new int[generations];
-        int[][] bestDNAperGen = new int[generations][genomeLength]; // store best agent DNA per generation
+    // evolve with options: the run of evolveParallel on the calling thread,
+    // with the seed drawn from "rand"
+    public static int[][] evolve(int[][] population, int[] world, int generations, double mutationRate, Random rand,
+            EvolutionOptions options) {
+        return evolveParallel(population, world, generations, mutationRate, rand.nextLong(), 1, options);
+    }
+
+    // seed of the random stream used to breed individual "index" in generation
+    // "gen", it only depends on (seed, gen, index), so the same seed gives the
+    // same generations no matter how many threads are used
+    public static long streamSeed(long seed, int gen, int index) {
+        long z = seed + 0x9E3779B97F4A7C15L * (((long) gen << 32) + index + 1);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
 
-        for (int gen = 0; gen < generations; gen++) {
-            // evaluate current population
-            int[] fitness = new int[populationSize];
-            for (int i = 0; i < populationSize; i++) {
-                fitness[i] = evaluation(world, population[i]);
+    // run body for every index in [from, to), on the pool if there is one
+    static void parallelFor(ForkJoinPool pool, int from, int to, IntConsumer body) {
+        if (pool == null) {
+            for (int i = from; i < to; i++) {
+                body.accept(i);
             }
+        } else {
+            pool.submit(() -> IntStream.range(from, to).parallel().forEach(body)).join();
+        }
+    }
 
-            // sort population by evaluation descending
-            Integer[] indices = new Integer[populationSize];
-            for (int i = 0; i < populationSize; i++)
-                indices[i] = i;
-            Arrays.sort(indices, (a, b) -> Integer.compare(fitness[b], fitness[a]));
+    // number of genes between two simulation checkpoints in evolveParallel
+    static final int CHECKPOINT_INTERVAL = 64;
+
+    // evolve on "threads" cores (1 = run on the calling thread) with the
+    // GeneticEngine, the result for a given seed is identical for any thread
+    // count
+    // children are evaluated by a CheckpointEvaluator, which resumes the
+    // simulation of parent1 at the first gene that changed, or with a batch
+    // of worlds in the options by a WorldBatchEvaluator
+    public static int[][] evolveParallel(int[][] population, int[] world, int generations, double mutationRate,
+            long seed, int threads) {
+        return evolveParallel(population, world, generations, mutationRate, seed, threads, new EvolutionOptions());
+    }
 
-            // create new population
-            int[][] newPopulation = new int[populationSize][genomeLength];
+    // with a stats stream in the options the run is headless: instead of printing
+    // and plotting, one CSV line "generation,best,average,worst" is written per
+    // generation, the best genomes only go to a history log if one is set
+    // with workers in the options the fitness is evaluated by EvaluationWorker
+    // processes (see DistributedEvaluator)
+    public static int[][] evolveParallel(int[][] population, int[] world, int generations, double mutationRate,
+            long seed, int threads, EvolutionOptions options) {
+        return engine(world, options).run(population, generations, mutationRate, seed, threads, options);
+    }
 
-            // elitism: copy top 10% unchanged
-            int eliteCount = populationSize / 10;
-            for (int i = 0; i < eliteCount; i++) {
-                newPopulation[i] = population[indices[i]];
-            }
+    // island model run: the population is split evenly over the islands of
+    // "model", each island evolves its part on its own thread and exchanges
+    // migrants with its neighbours (see GeneticEngine.runIslands)
+    public static int[][] evolveIslands(int[][] population, int[] world, int generations, double mutationRate,
+            long seed, IslandModel model, EvolutionOptions options) throws InterruptedException {
+        return engine(world, options).runIslands(population, generations, mutationRate, seed, model, options);
+    }
 
-            // create rest of population by crossover and mutation
-            for (int i = eliteCount; i < populationSize; i++) {
-                int parent1Index = indices[rand.nextInt(populationSize / 2)];
-                int parent2Index = indices[rand.nextInt(populationSize / 2)];
+    // the engine configuration of AgentEvolution: the best 10% are kept, the
+    // parents are drawn from the better half by default
+    static GeneticEngine engine(int[] world, EvolutionOptions options) {
+        return engine(new Agents(world, options.worlds(), options.lockstep()));
+    }
 
-                int[] child = crossover(population[parent1Index], population[parent2Index], rand);
-                mutate(child, mutationRate, rand);
-                newPopulation[i] = child;
-            }
+    static GeneticEngine engine(Agents agents) {
+        return new GeneticEngine(agents);
+    }
 
-            population = newPopulation;
+    // the same configuration without a world, for a program that breeds
+    // agents with the engine but scores them itself (CoEvolution)
+    static GeneticEngine breeder() {
+        return engine(new Agents(null, null, false));
+    }
 
-            // compute average
-            int sum = 0;
-            int min = Integer.MAX_VALUE;
-            int max = 0;
-            for (int i = 0; i < populationSize; i++) {
-                sum += fitness[i];
-                if (fitness[i] < min) {
-                    min = fitness[i];
-                }
-                if (fitness[i] > max) {
-                    max = fitness[i];
-                }
+    // agents as a GeneticEngine problem: the genes are moves (0-4), the
+    // fitness is the position reached on "world", or the score on the batch
+    // of worlds if there is one, with "lockstep" in vector lanes
+    // the world is compiled once, so runs that share the problem (see
+    // ParameterSweep) share the compiled world
+    static final class Agents implements GeneticEngine.Problem {
+
+        private final int[] world;
+        private final WorldBatch worlds;
+        private final TransitionTable table;
+        private final boolean lockstep;
+
+        Agents(int[] world, WorldBatch worlds, boolean lockstep) {
+            if (lockstep && worlds != null) {
+                throw new IllegalArgumentException("lockstep evaluation is on a single world");
             }
-            avgPerGen[gen] = sum / populationSize;
-            bestPerGen[gen] = max;
-            worstPerGen[gen] = min;
+            this.world = world;
+            this.worlds = worlds;
+            this.lockstep = lockstep;
+            this.table = worlds == null && world != null ? TransitionTable.compile(world) : null;
+        }
 
-            // store best agent DNA
-            bestDNAperGen[gen] = Arrays.copyOf(population[indices[0]], genomeLength);
+        @Override
+        public String name() {
+            return "AgentEvolution";
+        }
 
-            // print best fitness and average of each generation
-            System.out.println("Generation " + gen + " best position: " + fitness[indices[0]]
-                    + " and average position: " + avgPerGen[gen]);
+        @Override
+        public int alphabet() {
+            return 5;
+        }
 
-            // printAgentPath(world, bestDNAperGen[gen]);
-            // System.out.println("Best DNA: " + Arrays.toString(bestDNAperGen[gen]));
+        @Override
+        public byte snapshotKind() {
+            return RunSnapshot.AGENTS;
+        }
+
+        // one-point crossover and mutation, the child equals parent1 up to
+        // the crossover point or the first mutation
+        @Override
+        public int breed(GenomeArena arena, int parent1, int parent2, int child, double mutationRate,
+                RandomGenerator rand) {
+            int crossoverPoint = crossover(arena, parent1, parent2, child, rand);
+            int firstMutated = mutate(arena, child, mutationRate, rand);
+            return Math.min(crossoverPoint, firstMutated);
+        }
+
+        @Override
+        public GeneticEngine.Evaluator evaluator(GenomeArena arena) {
+            if (worlds != null) {
+                return new WorldBatchEvaluator(worlds, arena, CHECKPOINT_INTERVAL);
+            }
+            if (lockstep) {
+                return new LockstepEvaluator(world, arena);
+            }
+            return new CheckpointEvaluator(table, arena, CHECKPOINT_INTERVAL);
+        }
 
-            /*
-             * PLOTTING A SIMPLE GENERATION GRAPH
-             */
-            if (gen + 1 == generations) {
-                plotEvolutionGraph(avgPerGen, bestPerGen, worstPerGen);
-                visualizeBestDNAEvolution(bestDNAperGen);
+        @Override
+        public DistributedEvaluator remote(List<InetSocketAddress> workers) throws IOException {
+            if (worlds != null) {
+                throw new IllegalArgumentException("workers evaluate on a single world");
             }
+            return DistributedEvaluator.agents(workers, world);
         }
 
-        // print average positions array after evolution
-        System.out.println("Average positions per generation: " + Arrays.toString(avgPerGen));
+        @Override
+        public String statsHeader() {
+            return "generation,best,average,worst";
+        }
+
+        @Override
+        public String statsLine(int gen, double best, double average, double worst, double mutationRate) {
+            return String.format(Locale.ROOT, "%d,%d,%.3f,%d", gen, (int) best, average, (int) worst);
+        }
 
-        return population;
+        @Override
+        public String progressLine(int gen, double best, double average, double worst, double mutationRate) {
+            return "Generation " + gen + " best position: " + (int) best + " and average position: " + (int) average;
+        }
+
+        @Override
+        public String chartTitle() {
+            return "Evolution Graph";
+        }
+
+        @Override
+        public String chartLabel() {
+            return "Distance Reached";
+        }
+
+        // the DNA history, then the average positions
+        @Override
+        public void finish(double[] average, HistoryLog.Reader history) {
+            visualizeBestDNAEvolution(history);
+            int[] positions = new int[average.length];
+            for (int gen = 0; gen < average.length; gen++) {
+                positions[gen] = (int) average[gen];
+            }
+            System.out.println("Average positions per generation: " + Arrays.toString(positions));
+        }
+    }
+
+    static void closeQuietly(Closeable closeable) {
+        try {
+            if (closeable != null) {
+                closeable.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     public static void printAgentPath(int[] world, int[] agentMoves) {
@@ -267,162 +437,225 @@ public class AgentEvolution {
         System.out.println();
     }
 
-    public static void plotEvolutionGraph(int[] avgPerGen, int[] bestPerGen, int[] worstPerGen) {
-        JFrame frame = new JFrame("Evolution Graph");
+    // visualize differences between best DNA of current and previous generation
+    // the history is drawn from cached tiles (see HistoryView), so it stays
+    // responsive for any number of generations and genes
+    public static void visualizeBestDNAEvolution(HistoryLog.Reader history) {
+        JFrame frame = new JFrame("Best DNA Evolution");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        frame.setSize(800, 400);
-
-        JPanel panel = new JPanel() {
-            @Override
-            protected void paintComponent(Graphics g) {
-                super.paintComponent(g);
-
-                int padding = 80;
-                int width = getWidth() - 2 * padding;
-                int height = getHeight() - 2 * padding;
-
-                int generations = avgPerGen.length;
-                int maxValue = 0;
-                for (int i = 0; i < generations; i++) {
-                    if (avgPerGen[i] > maxValue)
-                        maxValue = avgPerGen[i];
-                    if (bestPerGen[i] > maxValue)
-                        maxValue = bestPerGen[i];
-                    if (worstPerGen[i] > maxValue)
-                        maxValue = worstPerGen[i];
-                }
+        frame.setSize(1200, 700);
 
-                // draw axes
-                g.drawLine(padding, padding + height, padding + width, padding + height); // x-axis
-                g.drawLine(padding, padding, padding, padding + height); // y-axis
-
-                // x-axis label
-                g.drawString("Generation", padding + width / 2 - 30, padding + height + 40);
-
-                // y-axis label - vertical using Graphics2D rotation
-                Graphics2D g2 = (Graphics2D) g;
-                g2.rotate(-Math.PI / 2);
-                g2.drawString("Distance Reached", -padding - height / 2 - 60, padding - 60);
-                g2.rotate(Math.PI / 2); // reset rotation
-
-                // y-axis numbers
-                for (int i = 0; i <= 5; i++) {
-                    int yValue = maxValue * i / 5;
-                    int y = padding + height - (yValue * height / maxValue);
-                    g.drawString(Integer.toString(yValue), padding - 40, y + 5);
-                    g.drawLine(padding - 5, y, padding + 5, y);
-                }
+        // first generation gray, then green for the same move, red for changed
+        HistoryView view = new HistoryView(history,
+                (gen, value, changed) -> gen == 0 ? 0x808080 : changed ? 0xDC0000 : 0x00B400);
 
-                // x-axis numbers
-                for (int i = 0; i < generations; i += Math.max(1, generations / 10)) {
-                    int x = padding + (i * width) / (generations - 1);
-                    g.drawString(Integer.toString(i), x - 10, padding + height + 20);
-                    g.drawLine(x, padding + height - 5, x, padding + height + 5);
-                }
-
-                // plot average (blue)
-                g.setColor(Color.BLUE);
-                for (int i = 0; i < generations - 1; i++) {
-                    int x1 = padding + (i * width) / (generations - 1);
-                    int y1 = padding + height - (avgPerGen[i] * height / maxValue);
-                    int x2 = padding + ((i + 1) * width) / (generations - 1);
-                    int y2 = padding + height - (avgPerGen[i + 1] * height / maxValue);
-                    g.drawLine(x1, y1, x2, y2);
-                }
+        JLabel title = new JLabel("Best Genome Evolution (Green = same move, Red = changed, Ctrl + wheel zooms)");
+        title.setFont(new Font("SansSerif", Font.BOLD, 16));
+        title.setBorder(BorderFactory.createEmptyBorder(8, 80, 8, 0));
 
-                // plot best (green)
-                g.setColor(Color.GREEN);
-                for (int i = 0; i < generations - 1; i++) {
-                    int x1 = padding + (i * width) / (generations - 1);
-                    int y1 = padding + height - (bestPerGen[i] * height / maxValue);
-                    int x2 = padding + ((i + 1) * width) / (generations - 1);
-                    int y2 = padding + height - (bestPerGen[i + 1] * height / maxValue);
-                    g.drawLine(x1, y1, x2, y2);
-                }
+        frame.add(title, BorderLayout.NORTH);
+        frame.add(view.inScrollPane(frame.getWidth() - 120), BorderLayout.CENTER);
+        frame.setVisible(true);
+    }
 
-                // plot worst (red)
-                g.setColor(Color.RED);
-                for (int i = 0; i < generations - 1; i++) {
-                    int x1 = padding + (i * width) / (generations - 1);
-                    int y1 = padding + height - (worstPerGen[i] * height / maxValue);
-                    int x2 = padding + ((i + 1) * width) / (generations - 1);
-                    int y2 = padding + height - (worstPerGen[i + 1] * height / maxValue);
-                    g.drawLine(x1, y1, x2, y2);
-                }
+    static final String USAGE = String.join(System.lineSeparator(),
+            "usage: java AgentEvolution                (interactive)",
+            "       java AgentEvolution --key value ... (headless batch run)",
+            "  --config FILE        properties file with any of the keys below",
+            "  --world-size N       size of the random world",
+            "  --world-seed N       seed of the random world (default 0)",
+            "  --world CELLS        explicit world instead, e.g. 0,1,0,2",
+            "  --worlds K           score every agent on K random worlds of --world-size,",
+            "                       seeds --world-seed .. --world-seed + K - 1 (not with --world",
+            "                       or --workers)",
+            "  --world-score S      fitness over the worlds: mean or worst (default mean)",
+            "  --lockstep B         true: simulate the agents from the start in Vector API lanes",
+            "                       (JDK 17+ with --add-modules jdk.incubator.vector, not with",
+            "                       --worlds or --workers) instead of resuming from checkpoints",
+            "  --agents N           number of agents",
+            "  --seed N             seed for agents and evolution (default 0)",
+            "  --generations N      number of generations",
+            "  --mutation-rate R    mutation rate (default 0.05)",
+            "  --threads N          worker threads (default: all cores)",
+            "  --stats FILE         CSV statistics per generation (default - = stdout)",
+            "  --history FILE       binary log of the best genome per generation",
+            "  --selection S        parent selection: truncation[:fraction], tournament[:size],",
+            "                       rank or sus (default truncation:0.5)",
+            "  --novelty K          also pick parents by novelty: the mean gene distance to the",
+            "                       K nearest genomes of the generation and of an archive of",
+            "                       novel ones (default 0 = off), the elites stay the fittest",
+            "  --novelty-weight W   share of novelty in the parent choice, 1 = pure novelty",
+            "                       search (default 0.5)",
+            "  --islands N          split the agents into N islands with migration",
+            "  --topology T         island neighbours: ring or full (default ring)",
+            "  --migration-interval N  generations between migrations (default 10)",
+            "  --migrants N         agents sent per migration (default 2)",
+            "  --workers H:P,...    evaluate on EvaluationWorker processes (not with --islands)",
+            "  --checkpoint FILE    snapshot of the run, rewritten every --checkpoint-interval",
+            "                       generations (default 100) and at the end",
+            "  --resume FILE        continue from a snapshot, with the same parameters",
+            "  --fitness-cache N    with --workers: cache the fitness of up to N agents by",
+            "                       genome hash, only unknown agents are sent (default 0 = off)",
+            "  --jmx B              true: publish live metrics as a JMX MBean (default false),",
+            "                       JFR events are recorded by any flight recording",
+            "  --target-fitness F   stop once the best fitness is at least F (finish: the end",
+            "                       of the world)",
+            "  --patience N         stop after N generations without a better best fitness",
+            "  --min-diversity D    stop once the share of genes that differ from the most",
+            "                       common value at their position falls below D",
+            "  --time-limit S       stop after the generation that ends S seconds in",
+            "  --max-evaluations N  stop after the generation that reaches N evaluations");
+
+    // headless run configured by command line arguments and/or a config file
+    // writes CSV statistics per generation and returns the exit status
+    static int runBatch(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        if (Arrays.asList(args).contains("--help")) {
+            System.out.println(USAGE);
+            return BatchConfig.EXIT_OK;
+        }
+        try {
+            BatchConfig config = BatchConfig.parse(args, "world-size", "world-seed", "world", "agents", "seed",
+                    "generations", "mutation-rate", "threads", "stats", "history", "selection", "worlds",
+                    "world-score", "islands", "topology", "migration-interval", "migrants", "workers",
+                    "checkpoint", "checkpoint-interval", "resume", "fitness-cache", "jmx", "target-fitness",
+                    "patience", "min-diversity", "time-limit", "max-evaluations", "novelty", "novelty-weight",
+                    "lockstep");
+            IslandModel islands = IslandModel.fromConfig(config);
+            if (config.has("workers") && islands != null) {
+                throw new IllegalArgumentException("--workers cannot be combined with --islands");
+            }
+            if (islands != null && (config.has("checkpoint") || config.has("resume"))) {
+                throw new IllegalArgumentException("island runs cannot be checkpointed");
+            }
 
-                // optional legend
-                g.setColor(Color.BLACK);
-                g.drawString("Average (Blue)", padding + 10, padding);
-                g.drawString("Best (Green)", padding + 110, padding);
-                g.drawString("Worst (Red)", padding + 210, padding);
+            if (config.has("worlds") && (config.has("world") || config.has("workers"))) {
+                throw new IllegalArgumentException("--worlds cannot be combined with --world or --workers");
             }
-        };
+            int[] world;
+            if (config.has("world")) {
+                world = parseWorld(config.getString("world", ""));
+            } else {
+                world = worldGenerate(config.getInt("world-size"), config.getInt("world-seed", 0));
+            }
+            world = worldFix(world);
 
-        frame.add(panel);
-        frame.setLocationRelativeTo(null);
-        frame.setVisible(true);
-    }
+            int numberOfAgents = config.getInt("agents");
+            int seed = config.getInt("seed", 0);
+            int generations = config.getInt("generations");
+            double mutationRate = config.getDouble("mutation-rate", 0.05);
+            int threads = config.getInt("threads", Runtime.getRuntime().availableProcessors());
 
-    // visualize differences between best DNA of current and previous generation
-    public static void visualizeBestDNAEvolution(int[][] bestDNAperGen) {
-        JFrame frame = new JFrame("Best DNA Evolution");
-        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        frame.setSize(1200, 700);
+            if (world.length < 1 || numberOfAgents < 2 || generations < 1 || threads < 1) {
+                throw new IllegalArgumentException(
+                        "world size and generations must be at least 1, agents at least 2, threads at least 1");
+            }
+            if (mutationRate < 0 || mutationRate > 1) {
+                throw new IllegalArgumentException("mutation rate must be between 0 and 1");
+            }
 
-        JPanel panel = new JPanel() {
-            @Override
-            protected void paintComponent(Graphics g) {
-                super.paintComponent(g);
-
-                int generations = bestDNAperGen.length;
-                int geneCount = bestDNAperGen[0].length;
-
-                int paddingLeft = 80;
-                int paddingTop = 40;
-
-                int cellWidth = Math.max(2, (getWidth() - paddingLeft - 100) / geneCount);
-                int cellHeight = Math.max(4, (getHeight() - paddingTop - 100) / generations);
-
-                // background
-                g.setColor(new Color(245, 245, 245));
-                g.fillRect(0, 0, getWidth(), getHeight());
-
-                // title
-                g.setColor(Color.BLACK);
-                g.setFont(new Font("SansSerif", Font.BOLD, 16));
-                g.drawString("Best Genome Evolution (Green = same move, Red = changed)", paddingLeft, 25);
-
-                // draw generations
-                for (int gen = 0; gen < generations; gen++) {
-                    // label the generation
-                    g.setColor(Color.BLACK);
-                    g.setFont(new Font("Monospaced", Font.PLAIN, 12));
-                    if (gen % 5 == 0) {
-                        g.drawString("Gen " + gen, 10, paddingTop + gen * cellHeight + cellHeight - 3);
-                    }
-                    // draw each gene cell
-                    for (int i = 0; i < geneCount; i++) {
-                        Color color = Color.GRAY; // first generation base color
-                        if (gen > 0) {
-                            if (bestDNAperGen[gen][i] == bestDNAperGen[gen - 1][i])
-                                color = new Color(0, 180, 0); // green for same
-                            else
-                                color = new Color(220, 0, 0); // red for changed
-                        }
-                        g.setColor(color);
-                        g.fillRect(paddingLeft + i * cellWidth, paddingTop + gen * cellHeight, cellWidth, cellHeight);
-                    }
+            int maxMoves = world.length * 10;
+            int[][] firstAgents = new int[numberOfAgents][];
+            for (int i = 0; i < numberOfAgents; i++) {
+                firstAgents[i] = firstAgentGenerate(seed + i, maxMoves);
+            }
+
+            PrintStream stats = config.openStats("stats");
+            EvolutionOptions options = new EvolutionOptions().stats(stats);
+            if (config.has("history")) {
+                options.history(Path.of(config.getString("history", "")));
+            }
+            if (config.has("selection")) {
+                options.selection(config.getString("selection", ""));
+            }
+            if (config.has("checkpoint")) {
+                options.checkpoint(Path.of(config.getString("checkpoint", "")),
+                        config.getInt("checkpoint-interval", 100));
+            }
+            if (config.has("resume")) {
+                options.resume(Path.of(config.getString("resume", "")));
+            }
+            if (config.has("worlds")) {
+                WorldBatch.Score score = WorldBatch.Score.parse(config.getString("world-score", "mean"));
+                options.worlds(WorldBatch.generate(config.getInt("worlds"), world.length,
+                        config.getInt("world-seed", 0), score));
+            }
+            if (config.getBoolean("lockstep", false)) {
+                if (config.has("worlds") || config.has("workers")) {
+                    throw new IllegalArgumentException("--lockstep cannot be combined with --worlds or --workers");
+                }
+                if (!LockstepEvaluator.vectorized()) {
+                    throw new IllegalArgumentException(
+                            "--lockstep needs the Vector API: JDK 17 or later with --add-modules jdk.incubator.vector");
                 }
+                options.lockstep(true);
+            }
+            int cacheSize = config.getInt("fitness-cache", 0);
+            if (cacheSize < 0) {
+                throw new IllegalArgumentException("fitness cache size must not be negative");
+            }
+            if (cacheSize > 0 && !config.has("workers")) {
+                throw new IllegalArgumentException("--fitness-cache needs --workers");
+            }
+            if (cacheSize > 0) {
+                options.fitnessCache(new FitnessCache(cacheSize));
+            }
+            options.metrics(config.getBoolean("jmx", false));
+            options.stopping(StoppingCriteria.fromConfig(config, world.length - 1));
+            options.novelty(config.getInt("novelty", 0), config.getDouble("novelty-weight", 0.5));
+            if (config.has("workers")) {
+                options.workers(DistributedEvaluator.parseWorkers(config.getString("workers", "")));
+            }
+            if (islands != null) {
+                evolveIslands(firstAgents, world, generations, mutationRate, seed, islands, options);
+            } else {
+                evolveParallel(firstAgents, world, generations, mutationRate, seed, threads, options);
+            }
+            stats.flush();
+            boolean failed = stats.checkError();
+            if (stats != System.out) {
+                stats.close();
+            }
+            if (failed) {
+                System.err.println("AgentEvolution: could not write statistics");
+                return BatchConfig.EXIT_FAILURE;
             }
-        };
+            return BatchConfig.EXIT_OK;
+        } catch (IllegalArgumentException e) {
+            System.err.println("AgentEvolution: " + e.getMessage());
+            System.err.println(USAGE);
+            return BatchConfig.EXIT_USAGE;
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("AgentEvolution: " + e.getMessage());
+            return BatchConfig.EXIT_FAILURE;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("AgentEvolution: interrupted");
+            return BatchConfig.EXIT_FAILURE;
+        }
+    }
 
-        // optional scrolling if genome is very long
-        JScrollPane scroll = new JScrollPane(panel);
-        frame.add(scroll);
-        frame.setVisible(true);
+    // world cells separated by commas or spaces, 0 - no obstacle, 1 - bush, 2 - bird
+    static int[] parseWorld(String cells) {
+        String[] parts = cells.trim().split("[,\\s]+");
+        int[] world = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            try {
+                world[i] = Integer.parseInt(parts[i]);
+            } catch (NumberFormatException e) {
+                world[i] = -1;
+            }
+            if (world[i] < 0 || world[i] > 2) {
+                throw new IllegalArgumentException("world cells must be 0, 1 or 2: " + parts[i]);
+            }
+        }
+        return world;
     }
 
     public static void main(String[] args) {
+        if (args.length > 0) {
+            System.exit(runBatch(args));
+        }
 
         Scanner sc = new Scanner(System.in);
 
@@ -450,9 +683,10 @@ public class AgentEvolution {
         }
 
         // evaluation
+        TransitionTable compiledWorld = TransitionTable.compile(testWorld);
         int[] evaluations = new int[numberOfAgents];
         for (int i = 0; i < numberOfAgents; i++) {
-            evaluations[i] = evaluation(testWorld, firstAgents[i]);
+            evaluations[i] = evaluation(compiledWorld, firstAgents[i]);
             // System.out.println(evaluations[i]);
         }
 
@@ -461,12 +695,14 @@ public class AgentEvolution {
 
         double mutationRate = 0.05;
 
-        int[][] finalPopulation = evolve(firstAgents, testWorld, generations, mutationRate, new Random(seed));
+        // evaluation and breeding run on all cores, results only depend on the seed
+        int threads = Runtime.getRuntime().availableProcessors();
+        int[][] finalPopulation = evolveParallel(firstAgents, testWorld, generations, mutationRate, seed, threads);
 
         // evaluate final population
         int[] finalEvaluations = new int[numberOfAgents];
         for (int i = 0; i < numberOfAgents; i++) {
-            finalEvaluations[i] = evaluation(testWorld, finalPopulation[i]);
+            finalEvaluations[i] = evaluation(compiledWorld, finalPopulation[i]);
             // System.out.println("Agent " + i + " final position: " + finalEvaluations[i]);
         }
 
@@ -0,0 +1,138 @@
+import java.io.*;
+import java.util.*;
+
+// parameters of a non-interactive run, read from the command line and an
+// optional properties file
+// arguments are "--key value" or "--key=value", "--config file" loads a
+// properties file first and arguments given on the command line win
+// malformed or unknown parameters throw IllegalArgumentException, so a main
+// can report them and exit with a status code
+public class BatchConfig {
+
+    // exit status of a batch run
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_FAILURE = 1;
+    public static final int EXIT_USAGE = 2;
+
+    private final Properties values = new Properties();
+
+    public static BatchConfig parse(String[] args, String... knownKeys) throws IOException {
+        BatchConfig config = new BatchConfig();
+        Properties fromArgs = new Properties();
+        String configFile = null;
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--") || arg.length() == 2) {
+                throw new IllegalArgumentException("unexpected argument: " + arg);
+            }
+            String key = arg.substring(2);
+            String value;
+            int eq = key.indexOf('=');
+            if (eq >= 0) {
+                value = key.substring(eq + 1);
+                key = key.substring(0, eq);
+            } else if (i + 1 < args.length) {
+                value = args[++i];
+            } else {
+                throw new IllegalArgumentException("missing value for --" + key);
+            }
+
+            if (key.equals("config")) {
+                configFile = value;
+            } else {
+                fromArgs.setProperty(key, value);
+            }
+        }
+
+        if (configFile != null) {
+            try (Reader in = new FileReader(configFile)) {
+                config.values.load(in);
+            }
+        }
+        config.values.putAll(fromArgs);
+
+        List<String> known = Arrays.asList(knownKeys);
+        for (String key : config.values.stringPropertyNames()) {
+            if (!known.contains(key)) {
+                throw new IllegalArgumentException("unknown parameter: " + key);
+            }
+        }
+        return config;
+    }
+
+    public boolean has(String key) {
+        return values.getProperty(key) != null;
+    }
+
+    public String getString(String key, String defaultValue) {
+        return values.getProperty(key, defaultValue).trim();
+    }
+
+    public int getInt(String key) {
+        return (int) getLong(key, null, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    public int getInt(String key, int defaultValue) {
+        return (int) getLong(key, (long) defaultValue, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    public long getLong(String key, long defaultValue) {
+        return getLong(key, defaultValue, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        String value = values.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("--" + key + " must be a number: " + value);
+        }
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = values.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        switch (value.trim()) {
+            case "true":
+                return true;
+            case "false":
+                return false;
+            default:
+                throw new IllegalArgumentException("--" + key + " must be true or false: " + value);
+        }
+    }
+
+    private long getLong(String key, Long defaultValue, long min, long max) {
+        String value = values.getProperty(key);
+        if (value == null) {
+            if (defaultValue == null) {
+                throw new IllegalArgumentException("missing required parameter --" + key);
+            }
+            return defaultValue;
+        }
+        try {
+            long parsed = Long.parseLong(value.trim());
+            if (parsed < min || parsed > max) {
+                throw new NumberFormatException();
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("--" + key + " must be an integer: " + value);
+        }
+    }
+
+    // stream for the per-generation statistics, "-" is stdout
+    public PrintStream openStats(String key) throws IOException {
+        String target = getString(key, "-");
+        if (target.equals("-")) {
+            return System.out;
+        }
+        return new PrintStream(new BufferedOutputStream(new FileOutputStream(target)), false);
+    }
+}
@@ -0,0 +1,179 @@
+import java.util.concurrent.ForkJoinPool;
+
+// evaluates the agents of a GenomeArena and remembers, for every individual,
+// the simulation state (position and height) every "interval" genes
+// a child starts with the genes of parent1 up to the crossover point (or the
+// first mutated gene), so its simulation can resume from the last checkpoint
+// of parent1 before that gene instead of from position 0
+// checkpoints, fitness and finish genes are double buffered like the arena:
+// the current generation is read, the next one is written, swap() flips them
+// (the GeneticEngine.Evaluator of agents on a single world)
+public class CheckpointEvaluator implements GeneticEngine.Evaluator {
+
+    private static final int UNKNOWN = -1; // finishedAt of an agent scored by the cache
+
+    private final TransitionTable table;
+    private final GenomeArena arena;
+    private final int interval;
+    private final int stride; // checkpoints stored per individual
+
+    // TransitionTable states, checkpoint k is the state before gene k * interval
+    private int[] checkpoints;
+    private int[] nextCheckpoints;
+
+    // checkpoint gene at which the finish had been reached (genome length if
+    // only after the last gene), Integer.MAX_VALUE if never, UNKNOWN if the
+    // agent was not simulated
+    private int[] finishedAt;
+    private int[] nextFinishedAt;
+
+    private int[] fitness;
+    private int[] nextFitness;
+
+    public CheckpointEvaluator(int[] world, GenomeArena arena, int interval) {
+        this(TransitionTable.compile(world), arena, interval);
+    }
+
+    // on a compiled world, which is only read and can be shared by runs
+    public CheckpointEvaluator(TransitionTable table, GenomeArena arena, int interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("checkpoint interval must be positive");
+        }
+        this.table = table;
+        this.arena = arena;
+        this.interval = interval;
+        this.stride = arena.genomeLength() / interval + 1;
+
+        int size = arena.size();
+        this.checkpoints = new int[size * stride];
+        this.nextCheckpoints = new int[size * stride];
+        this.finishedAt = new int[size];
+        this.nextFinishedAt = new int[size];
+        this.fitness = new int[size];
+        this.nextFitness = new int[size];
+    }
+
+    // fitness of the current generation
+    public int[] fitness() {
+        return fitness;
+    }
+
+    // evaluate individual "index" of the current generation from the start
+    public int evaluate(int index) {
+        fitness[index] = simulate(arena.current(), index, 0, TransitionTable.start(), checkpoints, finishedAt);
+        return fitness[index];
+    }
+
+    // evaluate slot "index" of the next generation from the start
+    public int evaluateNext(int index) {
+        nextFitness[index] = simulate(arena.next(), index, 0, TransitionTable.start(), nextCheckpoints,
+                nextFinishedAt);
+        return nextFitness[index];
+    }
+
+    // evaluate slot "child" of the next generation, whose genes before
+    // firstChanged are the same as those of "parent" in the current generation
+    public int evaluateChild(int child, int parent, int firstChanged) {
+        int genomeLength = arena.genomeLength();
+        if (finishedAt[parent] == UNKNOWN) {
+            return evaluateNext(child);
+        }
+
+        // parent reached the finish before the child differs from it
+        if (finishedAt[parent] <= firstChanged) {
+            int used = finishedAt[parent] / interval + 1;
+            System.arraycopy(checkpoints, parent * stride, nextCheckpoints, child * stride, Math.min(used, stride));
+            nextFinishedAt[child] = finishedAt[parent];
+            nextFitness[child] = fitness[parent];
+            return nextFitness[child];
+        }
+
+        // resume from the last checkpoint at or before the first changed gene
+        int resume = Math.min(firstChanged, genomeLength) / interval;
+        System.arraycopy(checkpoints, parent * stride, nextCheckpoints, child * stride, resume + 1);
+        int state = checkpoints[parent * stride + resume];
+
+        nextFitness[child] = simulate(arena.next(), child, resume * interval, state, nextCheckpoints,
+                nextFinishedAt);
+        return nextFitness[child];
+    }
+
+    // copy individual "from" of the current generation unchanged into slot "to"
+    // of the next generation (elitism)
+    public void copyToNext(int from, int to) {
+        System.arraycopy(checkpoints, from * stride, nextCheckpoints, to * stride, stride);
+        nextFinishedAt[to] = finishedAt[from];
+        nextFitness[to] = fitness[from];
+    }
+
+    @Override
+    public void evaluateAll(ForkJoinPool pool, double[] fitness) {
+        AgentEvolution.parallelFor(pool, 0, arena.size(), i -> fitness[i] = evaluate(i));
+    }
+
+    @Override
+    public void keep(int from, int to) {
+        copyToNext(from, to);
+    }
+
+    // children resume from their parent, migrants start from scratch, the
+    // simulation is cheap enough to be exact, so the cutoff is not used
+    @Override
+    public void evaluate(ForkJoinPool pool, int[] slots, int count, int[] parents, int[] firstChanged,
+            double cutoff, double[] fitness) {
+        AgentEvolution.parallelFor(pool, 0, count, k -> {
+            int slot = slots[k];
+            fitness[slot] = parents[slot] < 0 ? evaluateNext(slot)
+                    : evaluateChild(slot, parents[slot], firstChanged[slot]);
+        });
+    }
+
+    @Override
+    public void skip(int slot) {
+        nextFinishedAt[slot] = UNKNOWN;
+    }
+
+    // the next generation becomes the current one
+    @Override
+    public void swap() {
+        int[] tmp = checkpoints;
+        checkpoints = nextCheckpoints;
+        nextCheckpoints = tmp;
+
+        tmp = finishedAt;
+        finishedAt = nextFinishedAt;
+        nextFinishedAt = tmp;
+
+        tmp = fitness;
+        fitness = nextFitness;
+        nextFitness = tmp;
+    }
+
+    // run genes [from, genomeLength) of genome "index" in "genes" starting in
+    // "state", recording checkpoints and the finish gene, returns the position
+    // every interval is run through the transition table without checks,
+    // the finish is only tested at checkpoints (finish states are absorbing)
+    private int simulate(byte[] genes, int index, int from, int state, int[] cps, int[] finish) {
+        int genomeLength = arena.genomeLength();
+        int offset = arena.offset(index);
+        int cpBase = index * stride;
+
+        for (int i = from; i < genomeLength; i += interval) {
+            cps[cpBase + i / interval] = state;
+
+            // if an agent reaches the finish it doesnt matter what is after
+            if (table.isFinish(state)) {
+                finish[index] = i;
+                return TransitionTable.position(state);
+            }
+
+            state = table.run(genes, offset + i, offset + Math.min(i + interval, genomeLength), state);
+        }
+
+        if (genomeLength % interval == 0) {
+            cps[cpBase + genomeLength / interval] = state;
+        }
+        finish[index] = table.isFinish(state) ? genomeLength : Integer.MAX_VALUE;
+        return TransitionTable.position(state);
+    }
+}
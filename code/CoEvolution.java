@@ -0,0 +1,337 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+// co-evolution of levels and agents: both populations are bred by the
+// GeneticEngine with the configurations of LevelEvolution and AgentEvolution
+// (GeneticEngine.breed), but they score each other
+// - an agent's fitness is the sum of its positions on a sample of the current
+//   levels: the first "sample" levels, which are the elites of the previous
+//   generation
+// - a level's fitness is evaluateWorld plus a challenge bonus, which is
+//   highest when the best "sample" agents get halfway through it on average
+//
+// agent x level results are kept in a FitnessMatrix between generations, so
+// only the pairs with a new agent or level are simulated, in parallel
+public class CoEvolution {
+
+    // weight of the challenge bonus in the level fitness, evaluateWorld
+    // rewards a level with bushes and birds by 20
+    static final double CHALLENGE_WEIGHT = 20;
+
+    private final int sample;
+    private final FitnessMatrix cache;
+    private final GenomeArena agents;
+    private final GenomeArena levels;
+    private final GeneticEngine agentEngine = AgentEvolution.breeder();
+    private final GeneticEngine levelEngine = LevelEvolution.engine(false);
+    private int[] agentIds;
+    private int[] levelIds;
+    private int nextId;
+    private long simulations;
+
+    // "cacheSize" is the number of results kept between generations, at
+    // least the pairs one generation needs
+    public CoEvolution(int[][] agents, int[][] levels, int sample, int cacheSize) {
+        if (agents.length < 2 || levels.length < 2 || levels[0].length < 2 || sample < 1) {
+            throw new IllegalArgumentException(
+                    "need at least 2 agents, 2 levels of 2 cells and a sample of at least 1");
+        }
+        this.sample = sample;
+        this.cache = new FitnessMatrix(cacheSize);
+        this.agents = GenomeArena.of(agents);
+        this.levels = GenomeArena.of(levels);
+        this.agentIds = newIds(agents.length);
+        this.levelIds = newIds(levels.length);
+    }
+
+    // cache size for a run: twice the pairs one generation looks up
+    public static int defaultCacheSize(int agents, int levels, int sample) {
+        long pairs = (long) agents * Math.min(sample, levels) + (long) Math.min(sample, agents) * levels;
+        return (int) Math.max(1, Math.min(1 << 30, 2 * pairs));
+    }
+
+    public int[][] agents() {
+        return agents.toPopulation();
+    }
+
+    public int[][] levels() {
+        return levels.toPopulation();
+    }
+
+    public FitnessMatrix cache() {
+        return cache;
+    }
+
+    // number of agent x level simulations run so far
+    public long simulations() {
+        return simulations;
+    }
+
+    // with a stats stream in the options the run is headless and writes one CSV
+    // line "generation,agent_best,agent_average,level_best,level_average,simulations"
+    // per generation, otherwise a summary line is printed
+    // both populations are bred with random streams from "seed" (see
+    // GeneticEngine.breed), so a seed gives the same run on any thread count
+    public void evolve(int generations, double agentMutationRate, double levelMutationRate, long seed,
+            int threads, EvolutionOptions options) {
+        PrintStream stats = options.stats();
+        int agentCount = agents.size();
+        int levelCount = levels.size();
+        int levelSample = Math.min(sample, levelCount);
+        int agentSample = Math.min(sample, agentCount);
+        int[] cells = new int[levels.genomeLength()];
+
+        int[] agentOrder = new int[agentCount];
+        int[] levelOrder = new int[levelCount];
+        int[] sampleOrder = new int[agentCount];
+        double[] agentFitness = new double[agentCount];
+        double[] levelFitness = new double[levelCount];
+        double[] progress = new double[levelCount];
+        Selection.Strategy agentParents = agentEngine.parents(new EvolutionOptions());
+        Selection.Strategy levelParents = levelEngine.parents(options);
+        // the levels draw from other streams than the agents
+        long levelSeed = AgentEvolution.streamSeed(seed, -1, -1);
+
+        // pairs to resolve in one step and their results
+        int maxPairs = Math.max(agentCount * levelSample, agentSample * levelCount);
+        int[] pairAgents = new int[maxPairs];
+        int[] pairLevels = new int[maxPairs];
+        int[] results = new int[maxPairs];
+
+        if (stats != null) {
+            stats.println("generation,agent_best,agent_average,level_best,level_average,simulations");
+        }
+
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        try {
+            for (int gen = 0; gen < generations; gen++) {
+                long simulatedBefore = simulations;
+
+                // agents against the level sample
+                int pairs = 0;
+                for (int a = 0; a < agentCount; a++) {
+                    for (int l = 0; l < levelSample; l++, pairs++) {
+                        pairAgents[pairs] = a;
+                        pairLevels[pairs] = l;
+                    }
+                }
+                resolve(pairAgents, pairLevels, pairs, results, pool);
+                Arrays.fill(agentFitness, 0);
+                for (int p = 0; p < pairs; p++) {
+                    agentFitness[pairAgents[p]] += results[p];
+                }
+
+                // the best agents score the levels
+                Selection.identity(sampleOrder, agentCount);
+                Selection.partitionTop(agentFitness, sampleOrder, agentCount, agentSample);
+                pairs = 0;
+                for (int k = 0; k < agentSample; k++) {
+                    for (int l = 0; l < levelCount; l++, pairs++) {
+                        pairAgents[pairs] = sampleOrder[k];
+                        pairLevels[pairs] = l;
+                    }
+                }
+                resolve(pairAgents, pairLevels, pairs, results, pool);
+                Arrays.fill(progress, 0);
+                for (int p = 0; p < pairs; p++) {
+                    progress[pairLevels[p]] += results[p];
+                }
+                for (int l = 0; l < levelCount; l++) {
+                    double mean = progress[l] / agentSample / (cells.length - 1);
+                    levels.copyTo(l, cells);
+                    levelFitness[l] = LevelEvolution.evaluateWorld(cells)
+                            + CHALLENGE_WEIGHT * (1 - Math.abs(2 * mean - 1));
+                }
+
+                report(stats, gen, agentFitness, levelFitness, simulations - simulatedBefore);
+
+                // breed both populations, elites keep their ids (and cached results)
+                agentEngine.breed(agents, agentFitness, agentOrder, agentParents, agentMutationRate, seed, gen, pool);
+                agentIds = carryIds(agentIds, agentOrder, agentEngine.eliteCount(agentCount));
+                levelEngine.breed(levels, levelFitness, levelOrder, levelParents, levelMutationRate, levelSeed, gen,
+                        pool);
+                levelIds = carryIds(levelIds, levelOrder, levelEngine.eliteCount(levelCount));
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    // results of agent pairAgents[p] on level pairLevels[p] for p < count,
+    // from the cache or simulated
+    private void resolve(int[] pairAgents, int[] pairLevels, int count, int[] results, ForkJoinPool pool) {
+        int[] missing = new int[count];
+        int missingCount = 0;
+        for (int p = 0; p < count; p++) {
+            int cached = cache.get(agentIds[pairAgents[p]], levelIds[pairLevels[p]]);
+            if (cached >= 0) {
+                results[p] = cached;
+            } else {
+                missing[missingCount++] = p;
+            }
+        }
+        if (missingCount == 0) {
+            return;
+        }
+
+        // compile every level that is needed once
+        TransitionTable[] tables = new TransitionTable[levels.size()];
+        boolean[] used = new boolean[levels.size()];
+        int[] needed = new int[levels.size()];
+        int neededCount = 0;
+        for (int m = 0; m < missingCount; m++) {
+            int l = pairLevels[missing[m]];
+            if (!used[l]) {
+                used[l] = true;
+                needed[neededCount++] = l;
+            }
+        }
+        AgentEvolution.parallelFor(pool, 0, neededCount,
+                k -> tables[needed[k]] = TransitionTable.compile(levels.toArray(needed[k])));
+
+        byte[] genes = agents.current();
+        int length = agents.genomeLength();
+        AgentEvolution.parallelFor(pool, 0, missingCount, m -> {
+            int p = missing[m];
+            results[p] = tables[pairLevels[p]].evaluate(genes, agents.offset(pairAgents[p]), length);
+        });
+
+        for (int m = 0; m < missingCount; m++) {
+            int p = missing[m];
+            cache.put(agentIds[pairAgents[p]], levelIds[pairLevels[p]], results[p]);
+        }
+        simulations += missingCount;
+    }
+
+    // ids of the next generation: slot i < eliteCount holds the elite from
+    // slot order[i] (see GeneticEngine.breed), all other slots are new
+    private int[] carryIds(int[] ids, int[] order, int eliteCount) {
+        int[] next = newIds(ids.length);
+        for (int i = 0; i < eliteCount; i++) {
+            next[i] = ids[order[i]];
+        }
+        return next;
+    }
+
+    private int[] newIds(int count) {
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = nextId++;
+        }
+        return ids;
+    }
+
+    private void report(PrintStream stats, int gen, double[] agentFitness, double[] levelFitness, long simulated) {
+        double agentSum = 0;
+        double agentBest = Double.NEGATIVE_INFINITY;
+        for (double f : agentFitness) {
+            agentSum += f;
+            agentBest = Math.max(agentBest, f);
+        }
+        double levelSum = 0;
+        double levelBest = Double.NEGATIVE_INFINITY;
+        for (double f : levelFitness) {
+            levelSum += f;
+            levelBest = Math.max(levelBest, f);
+        }
+        double agentAverage = agentSum / agentFitness.length;
+        double levelAverage = levelSum / levelFitness.length;
+
+        if (stats != null) {
+            stats.printf(Locale.ROOT, "%d,%d,%.3f,%.4f,%.4f,%d%n", gen, (long) agentBest, agentAverage, levelBest,
+                    levelAverage, simulated);
+        } else {
+            System.out.printf("Gen %3d | Agents best: %d avg: %.2f | Levels best: %.2f avg: %.2f | simulated: %d%n",
+                    gen, (long) agentBest, agentAverage, levelBest, levelAverage, simulated);
+        }
+    }
+
+    // BATCH MODE
+    static final String USAGE = String.join(System.lineSeparator(),
+            "usage: java CoEvolution --key value ...",
+            "  --config FILE        properties file with any of the keys below",
+            "  --world-size N       number of cells of every level",
+            "  --agents N           number of agents",
+            "  --levels N           number of levels",
+            "  --generations N      number of generations",
+            "  --seed N             seed (default 0)",
+            "  --mutation-rate R    agent mutation rate (default 0.05)",
+            "  --level-mutation-rate R  level mutation rate (default 0.05)",
+            "  --sample N           levels per agent and agents per level (default 8)",
+            "  --cache-size N       agent x level results kept (default: twice a generation)",
+            "  --threads N          worker threads (default: all cores)",
+            "  --stats FILE         CSV statistics per generation (default - = stdout)",
+            "  --selection S        level parent selection (default tournament:5)");
+
+    static int runBatch(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        if (Arrays.asList(args).contains("--help")) {
+            System.out.println(USAGE);
+            return BatchConfig.EXIT_OK;
+        }
+        try {
+            BatchConfig config = BatchConfig.parse(args, "world-size", "agents", "levels", "generations", "seed",
+                    "mutation-rate", "level-mutation-rate", "sample", "cache-size", "threads", "stats",
+                    "selection");
+            int size = config.getInt("world-size");
+            int agentCount = config.getInt("agents");
+            int levelCount = config.getInt("levels");
+            int generations = config.getInt("generations");
+            int seed = config.getInt("seed", 0);
+            double agentRate = config.getDouble("mutation-rate", 0.05);
+            double levelRate = config.getDouble("level-mutation-rate", 0.05);
+            int sample = config.getInt("sample", 8);
+            int cacheSize = config.getInt("cache-size", CoEvolution.defaultCacheSize(agentCount, levelCount, sample));
+            int threads = config.getInt("threads", Runtime.getRuntime().availableProcessors());
+
+            if (size < 2 || generations < 1 || threads < 1 || cacheSize < 1) {
+                throw new IllegalArgumentException(
+                        "world size must be at least 2, generations, threads and cache size at least 1");
+            }
+            if (agentRate < 0 || agentRate > 1 || levelRate < 0 || levelRate > 1) {
+                throw new IllegalArgumentException("mutation rates must be between 0 and 1");
+            }
+
+            int[][] agents = new int[agentCount][];
+            for (int i = 0; i < agentCount; i++) {
+                agents[i] = AgentEvolution.firstAgentGenerate(seed + i, size * 10);
+            }
+            int[][] levels = new int[levelCount][];
+            for (int i = 0; i < levelCount; i++) {
+                levels[i] = LevelEvolution.generateWorldGenome(seed + i, size);
+            }
+
+            PrintStream stats = config.openStats("stats");
+            EvolutionOptions options = new EvolutionOptions().stats(stats);
+            if (config.has("selection")) {
+                options.selection(config.getString("selection", ""));
+            }
+            new CoEvolution(agents, levels, sample, cacheSize).evolve(generations, agentRate, levelRate,
+                    seed, threads, options);
+            stats.flush();
+            boolean failed = stats.checkError();
+            if (stats != System.out) {
+                stats.close();
+            }
+            if (failed) {
+                System.err.println("CoEvolution: could not write statistics");
+                return BatchConfig.EXIT_FAILURE;
+            }
+            return BatchConfig.EXIT_OK;
+        } catch (IllegalArgumentException e) {
+            System.err.println("CoEvolution: " + e.getMessage());
+            System.err.println(USAGE);
+            return BatchConfig.EXIT_USAGE;
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("CoEvolution: " + e.getMessage());
+            return BatchConfig.EXIT_FAILURE;
+        }
+    }
+
+    public static void main(String[] args) {
+        System.exit(runBatch(args));
+    }
+}
@@ -0,0 +1,353 @@
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+// master side of distributed fitness evaluation: the genomes of a generation
+// are sent in batches to EvaluationWorker processes over TCP and the workers
+// send back one fitness per genome
+//
+// every worker has up to PIPELINE batches in flight, so the next batch is
+// already waiting in its socket when it finishes one; a batch that was sent
+// to a worker that is lost (connection closed or reset, or nothing heard
+// for READ_TIMEOUT_MILLIS) goes back into the queue and is evaluated by
+// another worker, the run only fails when all workers are gone
+// the pipeline only spans the batches of one evaluate call: the next
+// generation is bred from the fitness of all of this one, so the workers
+// wait while the master selects and breeds between two generations
+// a worker sends a heartbeat every HEARTBEAT_MILLIS, also while it evaluates
+// a batch, so a silent connection means a hung worker or a dead network
+//
+// protocol (big endian, see DataOutput):
+// master: int MAGIC, int VERSION, byte problem, int worldLength, worldLength x int cell
+// master: byte BATCH, int id, int count, int genomeLength, count x genomeLength gene bytes
+// worker: int id, int count, count x double fitness
+// worker: int HEARTBEAT
+// master: byte END
+public class DistributedEvaluator implements Closeable {
+
+    static final int MAGIC = 0x45564457; // "EVDW"
+    static final int VERSION = 2;
+
+    // problems
+    static final byte AGENTS = 1;
+    static final byte LEVELS = 2;
+
+    // master messages
+    static final byte BATCH = 1;
+    static final byte END = 2;
+
+    // worker message in place of a batch id
+    static final int HEARTBEAT = -1;
+
+    static final int BATCH_SIZE = 64;
+    static final int PIPELINE = 2;
+    private static final int CONNECT_TIMEOUT_MILLIS = 10_000;
+    static final int HEARTBEAT_MILLIS = 1_000;
+    static final int READ_TIMEOUT_MILLIS = 10_000;
+
+    // the genomes of one evaluate call
+    private static final class Round {
+        final double[] fitness;
+        final CountDownLatch left;
+
+        Round(int size, int batches) {
+            fitness = new double[size];
+            left = new CountDownLatch(batches);
+        }
+    }
+
+    private static final class Batch {
+        final int id;
+        final Round round;
+        final int offset;
+        final int count;
+        final int genomeLength;
+        final byte[] genes;
+        final AtomicBoolean done = new AtomicBoolean();
+
+        Batch(int id, Round round, int offset, int count, int genomeLength, byte[] genes) {
+            this.id = id;
+            this.round = round;
+            this.offset = offset;
+            this.count = count;
+            this.genomeLength = genomeLength;
+            this.genes = genes;
+        }
+    }
+
+    private final BlockingDeque<Batch> pending = new LinkedBlockingDeque<>();
+    private final List<Connection> connections = new ArrayList<>();
+    private final AtomicInteger live = new AtomicInteger();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private volatile boolean closed;
+
+    // evaluator for AgentEvolution agents on "world" (already fixed, see worldFix)
+    public static DistributedEvaluator agents(List<InetSocketAddress> workers, int[] world) throws IOException {
+        return new DistributedEvaluator(workers, AGENTS, world);
+    }
+
+    // evaluator for LevelEvolution levels
+    public static DistributedEvaluator levels(List<InetSocketAddress> workers) throws IOException {
+        return new DistributedEvaluator(workers, LEVELS, new int[0]);
+    }
+
+    // "host:port,host:port,..."
+    public static List<InetSocketAddress> parseWorkers(String spec) {
+        List<InetSocketAddress> workers = new ArrayList<>();
+        for (String worker : spec.split(",")) {
+            String w = worker.trim();
+            int colon = w.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("worker must be host:port: " + w);
+            }
+            try {
+                workers.add(InetSocketAddress.createUnresolved(w.substring(0, colon),
+                        Integer.parseInt(w.substring(colon + 1))));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("invalid worker: " + w);
+            }
+        }
+        return workers;
+    }
+
+    private DistributedEvaluator(List<InetSocketAddress> workers, byte problem, int[] world) throws IOException {
+        IOException failure = null;
+        for (InetSocketAddress address : workers) {
+            try {
+                connections.add(new Connection(address, problem, world));
+            } catch (IOException e) {
+                failure = e;
+                System.err.println("DistributedEvaluator: cannot connect to " + name(address) + ": " + e.getMessage());
+            }
+        }
+        if (connections.isEmpty()) {
+            throw new IOException("no worker reachable", failure);
+        }
+        live.set(connections.size());
+        for (Connection c : connections) {
+            c.start();
+        }
+    }
+
+    // number of workers that are still connected
+    public int workers() {
+        return live.get();
+    }
+
+    // fitness of every genome, in order
+    // throws UncheckedIOException when all workers are lost
+    public double[] evaluate(int[][] genomes) {
+        int size = genomes.length;
+        int batches = (size + BATCH_SIZE - 1) / BATCH_SIZE;
+        Round round = new Round(size, batches);
+
+        for (int offset = 0; offset < size; offset += BATCH_SIZE) {
+            int count = Math.min(BATCH_SIZE, size - offset);
+            int genomeLength = genomes[offset].length;
+            byte[] genes = new byte[count * genomeLength];
+            for (int k = 0; k < count; k++) {
+                int[] genome = genomes[offset + k];
+                if (genome.length != genomeLength) {
+                    throw new IllegalArgumentException("genomes of a batch must have the same length");
+                }
+                for (int i = 0; i < genomeLength; i++) {
+                    genes[k * genomeLength + i] = (byte) genome[i];
+                }
+            }
+            pending.add(new Batch(nextId.getAndIncrement(), round, offset, count, genomeLength, genes));
+        }
+
+        try {
+            while (!round.left.await(100, TimeUnit.MILLISECONDS)) {
+                if (live.get() == 0) {
+                    pending.clear();
+                    throw new UncheckedIOException(new IOException("all workers lost"));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.clear();
+            throw new IllegalStateException("interrupted while waiting for workers", e);
+        }
+        return round.fitness;
+    }
+
+    private static String name(InetSocketAddress address) {
+        return address.getHostString() + ":" + address.getPort();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (Connection c : connections) {
+            c.close();
+        }
+    }
+
+    // one worker: a sender thread writes batches while a receiver thread
+    // reads results, "slots" limits the batches in flight
+    private final class Connection {
+
+        private final InetSocketAddress address;
+        private final Socket socket;
+        private final DataOutputStream out;
+        private final DataInputStream in;
+        private final Semaphore slots = new Semaphore(PIPELINE);
+        private final Map<Integer, Batch> inFlight = new ConcurrentHashMap<>();
+        private final Thread sender;
+        private final Thread receiver;
+        private boolean alive = true;
+
+        Connection(InetSocketAddress address, byte problem, int[] world) throws IOException {
+            this.address = address;
+            this.socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(address.getHostString(), address.getPort()),
+                        CONNECT_TIMEOUT_MILLIS);
+                socket.setTcpNoDelay(true);
+                socket.setKeepAlive(true);
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+                in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeByte(problem);
+                out.writeInt(world.length);
+                for (int cell : world) {
+                    out.writeInt(cell);
+                }
+                out.flush();
+                socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+            sender = new Thread(this::send, "evaluator-send-" + name(address));
+            receiver = new Thread(this::receive, "evaluator-receive-" + name(address));
+            sender.setDaemon(true);
+            receiver.setDaemon(true);
+        }
+
+        void start() {
+            sender.start();
+            receiver.start();
+        }
+
+        private void send() {
+            Batch batch = null;
+            try {
+                while (true) {
+                    slots.acquire();
+                    batch = pending.take();
+                    if (batch.done.get()) {
+                        slots.release();
+                        batch = null;
+                        continue;
+                    }
+                    // from here on inFlight owns the batch, whoever removes it
+                    // from there puts it back into the queue
+                    inFlight.put(batch.id, batch);
+                    out.writeByte(BATCH);
+                    out.writeInt(batch.id);
+                    out.writeInt(batch.count);
+                    out.writeInt(batch.genomeLength);
+                    out.write(batch.genes);
+                    out.flush();
+                    batch = null;
+                }
+            } catch (InterruptedException e) {
+                // closed or lost
+            } catch (IOException e) {
+                lost(e);
+            } finally {
+                if (batch != null) {
+                    requeue(inFlight.remove(batch.id));
+                }
+            }
+        }
+
+        private void receive() {
+            try {
+                while (true) {
+                    int id = in.readInt();
+                    if (id == HEARTBEAT) {
+                        continue;
+                    }
+                    int count = in.readInt();
+                    Batch batch = inFlight.remove(id);
+                    if (batch == null || count != batch.count) {
+                        throw new IOException("unexpected result for batch " + id);
+                    }
+                    double[] fitness = batch.round.fitness;
+                    for (int k = 0; k < count; k++) {
+                        double value = in.readDouble();
+                        if (!batch.done.get()) {
+                            fitness[batch.offset + k] = value;
+                        }
+                    }
+                    if (batch.done.compareAndSet(false, true)) {
+                        batch.round.left.countDown();
+                    }
+                    slots.release();
+                }
+            } catch (SocketTimeoutException e) {
+                lost(new IOException("no heartbeat for " + READ_TIMEOUT_MILLIS / 1000 + " s", e));
+            } catch (IOException e) {
+                lost(e);
+            }
+        }
+
+        // worker gone: give its batches to the others
+        private synchronized void lost(IOException cause) {
+            if (!alive) {
+                return;
+            }
+            alive = false;
+            if (!closed) {
+                System.err.println("DistributedEvaluator: lost worker " + name(address) + ": "
+                        + (cause instanceof EOFException ? "connection closed" : cause.getMessage()));
+            }
+            for (Integer id : inFlight.keySet()) {
+                requeue(inFlight.remove(id));
+            }
+            live.decrementAndGet();
+            sender.interrupt();
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // already broken
+            }
+        }
+
+        // a batch taken out of inFlight (null if another thread took it)
+        // goes back into the queue, unless another worker finished it
+        private void requeue(Batch batch) {
+            if (batch != null && !batch.done.get()) {
+                pending.addFirst(batch);
+            }
+        }
+
+        // stop sending, tell the worker and hang up
+        void close() {
+            sender.interrupt();
+            try {
+                sender.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (this) {
+                if (alive) {
+                    try {
+                        out.writeByte(END);
+                        out.flush();
+                    } catch (IOException e) {
+                        // the worker is gone anyway
+                    }
+                }
+            }
+            lost(new IOException("closed"));
+        }
+    }
+}
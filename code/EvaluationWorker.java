@@ -0,0 +1,157 @@
+import java.io.*;
+import java.net.*;
+import java.util.Arrays;
+import java.util.concurrent.*;
+
+// worker process of distributed evaluation (see DistributedEvaluator for the
+// protocol): listens on a TCP port, serves every master connection on its own
+// thread and evaluates the genomes of a batch on all cores, another thread per
+// connection sends the heartbeats
+// usage: java EvaluationWorker --port N [--threads N]
+public class EvaluationWorker {
+
+    static final String USAGE = String.join(System.lineSeparator(),
+            "usage: java EvaluationWorker --port N [--threads N]",
+            "  --port N             TCP port to listen on (0 = any free port)",
+            "  --threads N          evaluation threads (default: all cores)");
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    static int run(String[] args) {
+        if (Arrays.asList(args).contains("--help")) {
+            System.out.println(USAGE);
+            return BatchConfig.EXIT_OK;
+        }
+        int port;
+        int threads;
+        try {
+            BatchConfig config = BatchConfig.parse(args, "port", "threads");
+            port = config.getInt("port");
+            threads = config.getInt("threads", Runtime.getRuntime().availableProcessors());
+            if (port < 0 || port > 65535 || threads < 1) {
+                throw new IllegalArgumentException("port must be in 0..65535, threads at least 1");
+            }
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println("EvaluationWorker: " + e.getMessage());
+            System.err.println(USAGE);
+            return BatchConfig.EXIT_USAGE;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try (ServerSocket server = new ServerSocket(port)) {
+            // the port is printed so scripts can start workers on port 0
+            System.out.println("EvaluationWorker listening on port " + server.getLocalPort());
+            System.out.flush();
+            while (true) {
+                Socket socket = server.accept();
+                Thread t = new Thread(() -> serve(socket, pool), "worker-" + socket.getRemoteSocketAddress());
+                t.setDaemon(true);
+                t.start();
+            }
+        } catch (IOException e) {
+            System.err.println("EvaluationWorker: " + e.getMessage());
+            return BatchConfig.EXIT_FAILURE;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // one master connection, until END or the connection is lost
+    static void serve(Socket socket, ForkJoinPool pool) {
+        try (Socket s = socket) {
+            s.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 1 << 16));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), 1 << 16));
+
+            if (in.readInt() != DistributedEvaluator.MAGIC || in.readInt() != DistributedEvaluator.VERSION) {
+                throw new IOException("not a master of a supported version");
+            }
+            byte problem = in.readByte();
+            int[] world = new int[in.readInt()];
+            for (int i = 0; i < world.length; i++) {
+                world[i] = in.readInt();
+            }
+            Thread heartbeat = new Thread(() -> beat(out), "heartbeat-" + s.getRemoteSocketAddress());
+            heartbeat.setDaemon(true);
+            heartbeat.start();
+
+            TransitionTable table = null;
+            if (problem == DistributedEvaluator.AGENTS) {
+                table = TransitionTable.compile(world);
+            } else if (problem != DistributedEvaluator.LEVELS) {
+                throw new IOException("unknown problem " + problem);
+            }
+
+            byte[] genes = new byte[0];
+            double[] fitness = new double[0];
+            while (true) {
+                byte type = in.readByte();
+                if (type == DistributedEvaluator.END) {
+                    return;
+                }
+                if (type != DistributedEvaluator.BATCH) {
+                    throw new IOException("unknown message " + type);
+                }
+                int id = in.readInt();
+                int count = in.readInt();
+                int genomeLength = in.readInt();
+                if (genes.length < count * genomeLength) {
+                    genes = new byte[count * genomeLength];
+                }
+                if (fitness.length < count) {
+                    fitness = new double[count];
+                }
+                in.readFully(genes, 0, count * genomeLength);
+
+                evaluate(problem, table, genes, genomeLength, fitness, count, pool);
+
+                synchronized (out) {
+                    out.writeInt(id);
+                    out.writeInt(count);
+                    for (int k = 0; k < count; k++) {
+                        out.writeDouble(fitness[k]);
+                    }
+                    out.flush();
+                }
+            }
+        } catch (EOFException e) {
+            // master hung up
+        } catch (IOException e) {
+            System.err.println("EvaluationWorker: " + e.getMessage());
+        }
+    }
+
+    // tells the master every HEARTBEAT_MILLIS that the worker is alive, until
+    // the connection is closed
+    static void beat(DataOutputStream out) {
+        try {
+            while (true) {
+                Thread.sleep(DistributedEvaluator.HEARTBEAT_MILLIS);
+                synchronized (out) {
+                    out.writeInt(DistributedEvaluator.HEARTBEAT);
+                    out.flush();
+                }
+            }
+        } catch (InterruptedException | IOException e) {
+            // connection closed
+        }
+    }
+
+    static void evaluate(byte problem, TransitionTable table, byte[] genes, int genomeLength, double[] fitness,
+            int count, ForkJoinPool pool) {
+        AgentEvolution.parallelFor(pool, 0, count, k -> {
+            int offset = k * genomeLength;
+            if (problem == DistributedEvaluator.AGENTS) {
+                fitness[k] = table.evaluate(genes, offset, genomeLength);
+            } else {
+                int[] level = new int[genomeLength];
+                for (int i = 0; i < genomeLength; i++) {
+                    level[i] = genes[offset + i];
+                }
+                fitness[k] = LevelEvolution.evaluateWorld(level);
+            }
+        });
+    }
+}
@@ -0,0 +1,438 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import javax.management.*;
+import jdk.jfr.*;
+
+// instrumentation of the generation loop of an engine: the time of every
+// phase, the evaluations, the bytes allocated, the hit rate of the fitness
+// cache and the best, average and worst fitness of each generation
+// the numbers are published two ways:
+// - as a JMX MBean "evolution:type=<engine>[,island=<n>]" (see View), if the
+//   run has metrics on in its options, for jconsole and other JMX clients
+// - as a JFR event "evolution.Generation" per generation, whenever a flight
+//   recording with the event enabled is running (-XX:StartFlightRecording)
+// with neither of them begin() asks FlightRecorder.isInitialized() and every
+// other call is a test of one boolean, the clock and the allocation counters
+// are only read while something is listening (that check loads the one class
+// FlightRecorder, the event classes, the recorder itself and the management
+// classes, which take longer to load than a short run takes, are only loaded
+// once a recording runs or the MBean is on)
+//
+// an engine calls begin(gen), phase(...) when it moves on to the next phase
+// and end(...) with the fitness of the generation, end() is also where the
+// JFR event is committed and the MBean values are published
+// (GeneticEngine begins its first generation before it evaluates the first
+// population, so that evaluation is part of it)
+public class EvolutionMetrics implements AutoCloseable {
+
+    public enum Phase {
+        EVALUATION, SELECTION, BREEDING, STATS
+    }
+
+    // attributes of the MBean, values of the last generation unless they
+    // say otherwise
+    public interface View {
+        String getEngine();
+
+        int getIsland();
+
+        int getGeneration();
+
+        double getBestFitness();
+
+        double getAverageFitness();
+
+        double getWorstFitness();
+
+        // over the generations recorded so far
+        double getGenerationsPerSecond();
+
+        double getEvaluationsPerSecond();
+
+        long getEvaluations();
+
+        // mean time of a phase per generation so far
+        double getEvaluationMillis();
+
+        double getSelectionMillis();
+
+        double getBreedingMillis();
+
+        double getStatsMillis();
+
+        // -1 if the JVM does not count allocations per thread
+        long getAllocatedBytesPerGeneration();
+
+        // share of the lookups in the fitness cache that hit, over the
+        // generations recorded so far, NaN without a cache (islands share
+        // theirs, so it counts the lookups of every island)
+        double getCacheHitRate();
+    }
+
+    @Name("evolution.Generation")
+    @Label("Generation")
+    @Category("Evolution")
+    @Description("One generation of an evolution engine")
+    @StackTrace(false)
+    static class GenerationEvent extends Event {
+        @Label("Engine")
+        String engine;
+
+        @Label("Island")
+        int island;
+
+        @Label("Generation")
+        int generation;
+
+        @Label("Evaluation")
+        @Timespan
+        long evaluation;
+
+        @Label("Selection")
+        @Timespan
+        long selection;
+
+        @Label("Breeding")
+        @Timespan
+        long breeding;
+
+        @Label("Statistics")
+        @Timespan
+        long stats;
+
+        @Label("Evaluations")
+        int evaluations;
+
+        @Label("Allocated")
+        @DataAmount
+        long allocated;
+
+        @Label("Cache Hit Rate")
+        @Percentage
+        double cacheHitRate;
+
+        @Label("Best Fitness")
+        double best;
+
+        @Label("Average Fitness")
+        double average;
+
+        @Label("Worst Fitness")
+        double worst;
+    }
+
+    // the values the MBean shows, replaced as a whole after every generation
+    private static final class Published {
+        int generation = -1;
+        double best;
+        double average;
+        double worst;
+        int generations;
+        long evaluations;
+        long nanos;
+        final long[] phaseNanos = new long[Phase.values().length];
+        long allocated = -1;
+        long cacheHits;
+        long cacheLookups;
+    }
+
+    private final String engine;
+    private final int island;
+    private final FitnessCache cache; // null if the run has none
+    // ids of the live workers of the pool from pool(), if any
+    private final Set<Long> workers = ConcurrentHashMap.newKeySet();
+    private final ObjectName name; // null if the MBean is not registered
+
+    // the generation in progress, only touched by the thread of the engine
+    private boolean active;
+    private GenerationEvent event;
+    private int generation;
+    private long begin;
+    private long phaseStart;
+    private Phase phase;
+    private final long[] phaseNanos = new long[Phase.values().length];
+    private long allocatedBefore;
+    private long hitsBefore;
+    private long missesBefore;
+
+    private volatile Published published = new Published();
+
+    // metrics of one run of "engine", island -1 for a run that is not part
+    // of an island model
+    // with jmx the MBean is registered until close()
+    public EvolutionMetrics(String engine, int island, boolean jmx) {
+        this(engine, island, jmx, null);
+    }
+
+    // metrics that also report the hit rate of "cache"
+    public EvolutionMetrics(String engine, int island, boolean jmx, FitnessCache cache) {
+        this.engine = engine;
+        this.island = island;
+        this.cache = cache;
+        this.name = jmx ? register() : null;
+    }
+
+    // metrics for a run with these options
+    static EvolutionMetrics of(String engine, EvolutionOptions options) {
+        IslandModel.Port port = options.migration();
+        return new EvolutionMetrics(engine, port != null ? port.island() : -1, options.metrics(),
+                options.fitnessCache());
+    }
+
+    // the pool of an engine that runs on "threads" threads, null for one
+    // the allocations of its workers count together with those of the engine
+    // thread, the other threads of the JVM are left out
+    public ForkJoinPool pool(int threads) {
+        if (threads <= 1) {
+            return null;
+        }
+        return new ForkJoinPool(threads, owner -> new ForkJoinWorkerThread(owner) {
+            @Override
+            protected void onStart() {
+                super.onStart();
+                workers.add(getId());
+            }
+
+            @Override
+            protected void onTermination(Throwable exception) {
+                workers.remove(getId());
+                super.onTermination(exception);
+            }
+        }, null, false);
+    }
+
+    private ObjectName register() {
+        try {
+            String key = "evolution:type=" + engine + (island >= 0 ? ",island=" + island : "");
+            ObjectName objectName = new ObjectName(key);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(new StandardMBean(new Attributes(), View.class), objectName);
+            return objectName;
+        } catch (InstanceAlreadyExistsException e) {
+            throw new IllegalStateException("another run of " + engine + " publishes metrics already", e);
+        } catch (JMException e) {
+            throw new IllegalStateException("cannot register metrics of " + engine, e);
+        }
+    }
+
+    public void begin(int gen) {
+        // no recording can be running before the flight recorder is
+        GenerationEvent next = FlightRecorder.isInitialized() ? new GenerationEvent() : null;
+        active = name != null || next != null && next.isEnabled();
+        if (!active) {
+            return;
+        }
+        event = next;
+        if (event != null) {
+            event.begin();
+        }
+        generation = gen;
+        Arrays.fill(phaseNanos, 0);
+        allocatedBefore = allocated();
+        if (cache != null) {
+            hitsBefore = cache.hits();
+            missesBefore = cache.misses();
+        }
+        begin = System.nanoTime();
+        phaseStart = begin;
+        phase = Phase.EVALUATION;
+    }
+
+    // the generation moves on to phase "next"
+    public void phase(Phase next) {
+        if (!active) {
+            return;
+        }
+        long now = System.nanoTime();
+        phaseNanos[phase.ordinal()] += now - phaseStart;
+        phaseStart = now;
+        phase = next;
+    }
+
+    public void end(int evaluations, double best, double average, double worst) {
+        if (!active) {
+            return;
+        }
+        long now = System.nanoTime();
+        phaseNanos[phase.ordinal()] += now - phaseStart;
+        long allocatedBytes = allocatedBefore >= 0 ? Math.max(0, allocated() - allocatedBefore) : -1;
+        long hits = cache != null ? cache.hits() - hitsBefore : 0;
+        long lookups = cache != null ? hits + cache.misses() - missesBefore : 0;
+
+        if (event != null && event.shouldCommit()) {
+            event.engine = engine;
+            event.island = island;
+            event.generation = generation;
+            event.evaluation = phaseNanos[Phase.EVALUATION.ordinal()];
+            event.selection = phaseNanos[Phase.SELECTION.ordinal()];
+            event.breeding = phaseNanos[Phase.BREEDING.ordinal()];
+            event.stats = phaseNanos[Phase.STATS.ordinal()];
+            event.evaluations = evaluations;
+            event.allocated = allocatedBytes;
+            event.cacheHitRate = lookups > 0 ? (double) hits / lookups : Double.NaN;
+            event.best = best;
+            event.average = average;
+            event.worst = worst;
+            event.commit();
+        }
+        event = null;
+
+        if (name != null) {
+            Published last = published;
+            Published next = new Published();
+            next.generation = generation;
+            next.best = best;
+            next.average = average;
+            next.worst = worst;
+            next.generations = last.generations + 1;
+            next.evaluations = last.evaluations + evaluations;
+            next.nanos = last.nanos + now - begin;
+            for (int p = 0; p < phaseNanos.length; p++) {
+                next.phaseNanos[p] = last.phaseNanos[p] + phaseNanos[p];
+            }
+            next.allocated = allocatedBytes;
+            next.cacheHits = last.cacheHits + hits;
+            next.cacheLookups = last.cacheLookups + lookups;
+            published = next;
+        }
+        active = false;
+    }
+
+    @Override
+    public void close() {
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException e) {
+                // already gone
+            }
+        }
+    }
+
+    // bytes allocated so far by this thread and the workers of the pool,
+    // -1 if unknown (a worker that ends within a generation takes its bytes
+    // with it, the difference is then kept from going below 0)
+    private long allocated() {
+        com.sun.management.ThreadMXBean threads = Allocations.THREADS;
+        if (threads == null) {
+            return -1;
+        }
+        long sum = threads.getCurrentThreadAllocatedBytes();
+        if (workers.isEmpty()) {
+            return sum;
+        }
+        long[] ids = workers.stream().mapToLong(Long::longValue).toArray();
+        for (long bytes : threads.getThreadAllocatedBytes(ids)) {
+            sum += Math.max(0, bytes);
+        }
+        return sum;
+    }
+
+    // the allocation counters of the JVM, looked up on first use
+    private static final class Allocations {
+        static final com.sun.management.ThreadMXBean THREADS = counter();
+
+        private static com.sun.management.ThreadMXBean counter() {
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (threads instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+                if (counter.isThreadAllocatedMemorySupported() && counter.isThreadAllocatedMemoryEnabled()) {
+                    return counter;
+                }
+            }
+            return null;
+        }
+    }
+
+    // the MBean, reads the published values from JMX threads
+    private final class Attributes implements View {
+
+        @Override
+        public String getEngine() {
+            return engine;
+        }
+
+        @Override
+        public int getIsland() {
+            return island;
+        }
+
+        @Override
+        public int getGeneration() {
+            return published.generation;
+        }
+
+        @Override
+        public double getBestFitness() {
+            return published.best;
+        }
+
+        @Override
+        public double getAverageFitness() {
+            return published.average;
+        }
+
+        @Override
+        public double getWorstFitness() {
+            return published.worst;
+        }
+
+        @Override
+        public double getGenerationsPerSecond() {
+            Published p = published;
+            return p.nanos > 0 ? p.generations * 1e9 / p.nanos : 0;
+        }
+
+        @Override
+        public double getEvaluationsPerSecond() {
+            Published p = published;
+            return p.nanos > 0 ? p.evaluations * 1e9 / p.nanos : 0;
+        }
+
+        @Override
+        public long getEvaluations() {
+            return published.evaluations;
+        }
+
+        @Override
+        public double getEvaluationMillis() {
+            return meanMillis(Phase.EVALUATION);
+        }
+
+        @Override
+        public double getSelectionMillis() {
+            return meanMillis(Phase.SELECTION);
+        }
+
+        @Override
+        public double getBreedingMillis() {
+            return meanMillis(Phase.BREEDING);
+        }
+
+        @Override
+        public double getStatsMillis() {
+            return meanMillis(Phase.STATS);
+        }
+
+        @Override
+        public long getAllocatedBytesPerGeneration() {
+            return published.allocated;
+        }
+
+        @Override
+        public double getCacheHitRate() {
+            Published p = published;
+            return p.cacheLookups > 0 ? (double) p.cacheHits / p.cacheLookups : Double.NaN;
+        }
+
+        private double meanMillis(Phase phase) {
+            Published p = published;
+            return p.generations > 0 ? p.phaseNanos[phase.ordinal()] / 1e6 / p.generations : 0;
+        }
+    }
+}
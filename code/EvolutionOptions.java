@@ -0,0 +1,284 @@
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.file.*;
+import java.util.List;
+
+// optional features of an evolution run, everything is off by default
+// setters return this, so options can be chained:
+// new EvolutionOptions().stats(System.out).history(Path.of("run.hist"))
+public class EvolutionOptions {
+
+    private PrintStream stats;
+    private Path history;
+    private String selection;
+    private IslandModel.Port migration;
+    private List<InetSocketAddress> workers;
+    private Path checkpoint;
+    private int checkpointInterval;
+    private Path resume;
+    private FitnessCache fitnessCache;
+    private WorldBatch worlds;
+    private boolean lockstep;
+    private boolean pareto;
+    private int noveltyNeighbours;
+    private double noveltyWeight;
+    private boolean metrics;
+    private StoppingCriteria stopping;
+    private StatsRing progress;
+
+    // CSV statistics per generation, a run with a stats stream is headless:
+    // no console output and no windows
+    public EvolutionOptions stats(PrintStream stats) {
+        this.stats = stats;
+        return this;
+    }
+
+    public PrintStream stats() {
+        return stats;
+    }
+
+    public boolean headless() {
+        return stats != null;
+    }
+
+    // how parents are picked (see Selection.parse), null keeps the default of
+    // the engine (truncation to the better half for agents, tournament of 5
+    // for levels)
+    public EvolutionOptions selection(String selection) {
+        if (selection != null) {
+            Selection.parse(selection); // fail early on a bad spec
+        }
+        this.selection = selection;
+        return this;
+    }
+
+    public String selection() {
+        return selection;
+    }
+
+    // a new selection strategy for one run
+    Selection.Strategy selectionOr(String defaultSelection) {
+        return Selection.parse(selection != null ? selection : defaultSelection);
+    }
+
+    // the island this run is part of, null if it is not part of an island model
+    // the stats lines of an island start with the island number and no header
+    // is written (IslandModel writes it once)
+    public EvolutionOptions migration(IslandModel.Port migration) {
+        this.migration = migration;
+        return this;
+    }
+
+    public IslandModel.Port migration() {
+        return migration;
+    }
+
+    // options for one island of an island run: same stats, selection, fitness
+    // cache, worlds, evaluator, objectives, novelty, metrics and stopping
+    // criteria, no history and no progress ring (it has a single producer)
+    public EvolutionOptions forIsland(IslandModel.Port port) {
+        return new EvolutionOptions().stats(stats).selection(selection).migration(port).fitnessCache(fitnessCache)
+                .worlds(worlds).lockstep(lockstep).pareto(pareto).novelty(noveltyNeighbours, noveltyWeight)
+                .metrics(metrics).stopping(stopping);
+    }
+
+    // EvaluationWorker processes that evaluate the fitness instead of this
+    // JVM (see DistributedEvaluator), null evaluates locally
+    public EvolutionOptions workers(List<InetSocketAddress> workers) {
+        this.workers = workers;
+        return this;
+    }
+
+    public List<InetSocketAddress> workers() {
+        return workers;
+    }
+
+    // cache of fitness values by genome hash, shared by all islands of a run,
+    // null scores every genome
+    public EvolutionOptions fitnessCache(FitnessCache fitnessCache) {
+        this.fitnessCache = fitnessCache;
+        return this;
+    }
+
+    public FitnessCache fitnessCache() {
+        return fitnessCache;
+    }
+
+    // worlds the agents are scored on instead of the world given to the
+    // engine (see WorldBatch), null scores them on that one world
+    public EvolutionOptions worlds(WorldBatch worlds) {
+        this.worlds = worlds;
+        return this;
+    }
+
+    public WorldBatch worlds() {
+        return worlds;
+    }
+
+    // evaluate agents on the single local world with a LockstepEvaluator, one
+    // vector lane per agent, instead of resuming children from checkpoints
+    public EvolutionOptions lockstep(boolean lockstep) {
+        this.lockstep = lockstep;
+        return this;
+    }
+
+    public boolean lockstep() {
+        return lockstep;
+    }
+
+    // evolve a Pareto front of the fitness components instead of their
+    // weighted sum (NSGA-II, see LevelEvolution.engine), levels only
+    public EvolutionOptions pareto(boolean pareto) {
+        this.pareto = pareto;
+        return this;
+    }
+
+    public boolean pareto() {
+        return pareto;
+    }
+
+    // pick parents by a blend of fitness and novelty, the mean gene distance
+    // to the "neighbours" nearest genomes of the generation and an archive
+    // (see NoveltyArchive), "weight" 1 is pure novelty search, 0 neighbours
+    // turn it off; the elites are still the fittest
+    public EvolutionOptions novelty(int neighbours, double weight) {
+        if (neighbours < 0 || !(weight >= 0 && weight <= 1)) {
+            throw new IllegalArgumentException("novelty neighbours must not be negative, weight in [0, 1]");
+        }
+        this.noveltyNeighbours = neighbours;
+        this.noveltyWeight = weight;
+        return this;
+    }
+
+    public int noveltyNeighbours() {
+        return noveltyNeighbours;
+    }
+
+    public double noveltyWeight() {
+        return noveltyWeight;
+    }
+
+    // publish the metrics of the run as a JMX MBean (see EvolutionMetrics),
+    // the JFR events do not need this, they follow the flight recording
+    public EvolutionOptions metrics(boolean metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    public boolean metrics() {
+        return metrics;
+    }
+
+    // when the run may end before its last generation (see StoppingCriteria),
+    // null runs every generation
+    public EvolutionOptions stopping(StoppingCriteria stopping) {
+        this.stopping = stopping;
+        return this;
+    }
+
+    public StoppingCriteria stopping() {
+        return stopping;
+    }
+
+    // the progress of this run towards its stopping criteria, null if it has none
+    StoppingCriteria.Tracker startStopping() {
+        return stopping != null ? stopping.start() : null;
+    }
+
+    // ring the run publishes the statistics of every generation into, for a
+    // live view (see LiveChart), null publishes nowhere
+    public EvolutionOptions progress(StatsRing progress) {
+        this.progress = progress;
+        return this;
+    }
+
+    public StatsRing progress() {
+        return progress;
+    }
+
+    // the progress ring of this run: the one set, else a new LiveChart window
+    // for an interactive run, null for a headless one
+    StatsRing openProgress(String title, int generations, String yLabel) {
+        if (progress != null || headless()) {
+            return progress;
+        }
+        return LiveChart.open(title, generations, yLabel);
+    }
+
+    // file for periodic snapshots of the run (see RunSnapshot), written every
+    // "interval" generations and after the last one
+    public EvolutionOptions checkpoint(Path checkpoint, int interval) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("checkpoint interval must be at least 1");
+        }
+        this.checkpoint = checkpoint;
+        this.checkpointInterval = interval;
+        return this;
+    }
+
+    public Path checkpoint() {
+        return checkpoint;
+    }
+
+    // snapshot to continue from instead of the population given to the engine
+    public EvolutionOptions resume(Path resume) {
+        this.resume = resume;
+        return this;
+    }
+
+    public Path resume() {
+        return resume;
+    }
+
+    // the snapshot writer for this run, null if there is none
+    RunSnapshot.Writer openCheckpoint(byte engine) {
+        return checkpoint != null ? new RunSnapshot.Writer(checkpoint, engine) : null;
+    }
+
+    // true if a snapshot is due after generation gen of a run of "generations"
+    // (or one that stops after gen)
+    boolean checkpointDue(int gen, int generations, boolean stopping) {
+        return checkpoint != null && ((gen + 1) % checkpointInterval == 0 || gen + 1 == generations || stopping);
+    }
+
+    // the snapshot to resume from, null if the run starts from scratch
+    RunSnapshot openResume(byte engine, int size, int genomeLength, int generations) {
+        if (resume == null) {
+            return null;
+        }
+        RunSnapshot snapshot = RunSnapshot.load(resume, engine, size, genomeLength);
+        if (snapshot.generation() > generations) {
+            throw new IllegalArgumentException(
+                    resume + " is at generation " + snapshot.generation() + ", after the end of this run");
+        }
+        return snapshot;
+    }
+
+    // file for the best genome of every generation (see HistoryLog)
+    // interactive runs use a temporary file when none is set
+    public EvolutionOptions history(Path history) {
+        this.history = history;
+        return this;
+    }
+
+    public Path history() {
+        return history;
+    }
+
+    // the history log to write for this run, null if there is none
+    HistoryLog.Writer openHistory(String prefix, int genomeLength) {
+        try {
+            Path path = history;
+            if (path == null) {
+                if (headless()) {
+                    return null;
+                }
+                path = Files.createTempFile(prefix, ".hist");
+                path.toFile().deleteOnExit();
+            }
+            return HistoryLog.create(path, genomeLength);
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot create history log", e);
+        }
+    }
+}
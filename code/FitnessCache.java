@@ -0,0 +1,116 @@
+import java.util.concurrent.atomic.LongAdder;
+
+// bounded cache of fitness values by genome hash (see GenomeHash), so elites
+// and the duplicates of a converged population are not scored again
+//
+// the cache is set associative: a hash maps to one set of WAYS entries and
+// within a set the entry to replace is chosen by CLOCK (second chance), every
+// hit marks its entry as referenced and the hand of the set skips (and
+// unmarks) referenced entries, so recently used genomes stay while the ones
+// of past generations are evicted
+// the sets are guarded by striped locks, so evaluation threads (islands that
+// share the cache) can look up and store at the same time, hits and misses
+// are counted with LongAdders (see EvolutionMetrics)
+//
+// entries are keyed by the 64-bit hash alone, two genomes with the same hash
+// (about 2^-64 per pair) would share a fitness
+// a cache belongs to one fitness function: agents on one world, or levels
+public class FitnessCache {
+
+    static final int WAYS = 8;
+    private static final int STRIPES = 64;
+
+    // flags
+    private static final byte USED = 1;
+    private static final byte REFERENCED = 2;
+
+    private final long[] keys;
+    private final double[] values;
+    private final byte[] flags;
+    private final byte[] hands; // clock hand of every set
+    private final int setMask;
+    private final Object[] locks;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    // a cache of at least "capacity" entries (rounded up to whole sets, a
+    // power of two of them)
+    public FitnessCache(int capacity) {
+        if (capacity < 1 || capacity > 1 << 28) {
+            throw new IllegalArgumentException("capacity must be in 1..2^28");
+        }
+        int sets = Integer.highestOneBit(Math.max(1, (capacity + WAYS - 1) / WAYS));
+        if (sets * WAYS < capacity) {
+            sets <<= 1;
+        }
+        keys = new long[sets * WAYS];
+        values = new double[sets * WAYS];
+        flags = new byte[sets * WAYS];
+        hands = new byte[sets];
+        setMask = sets - 1;
+        locks = new Object[Math.min(STRIPES, sets)];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    // fitness of the genome with this hash, NaN if it is not cached
+    public double get(long hash) {
+        int set = set(hash);
+        int base = set * WAYS;
+        synchronized (locks[set & (locks.length - 1)]) {
+            for (int e = base; e < base + WAYS; e++) {
+                if (keys[e] == hash && (flags[e] & USED) != 0) {
+                    flags[e] |= REFERENCED;
+                    hits.increment();
+                    return values[e];
+                }
+            }
+        }
+        misses.increment();
+        return Double.NaN;
+    }
+
+    public void put(long hash, double fitness) {
+        int set = set(hash);
+        int base = set * WAYS;
+        synchronized (locks[set & (locks.length - 1)]) {
+            // already there (another thread scored the same genome)
+            for (int e = base; e < base + WAYS; e++) {
+                if (keys[e] == hash && (flags[e] & USED) != 0) {
+                    values[e] = fitness;
+                    return;
+                }
+            }
+            // sweep from the hand to the first unused or unreferenced entry,
+            // at most one full turn clears all marks
+            int hand = hands[set];
+            while ((flags[base + hand] & REFERENCED) != 0) {
+                flags[base + hand] &= ~REFERENCED;
+                hand = (hand + 1) & (WAYS - 1);
+            }
+            int e = base + hand;
+            keys[e] = hash;
+            values[e] = fitness;
+            flags[e] = USED;
+            hands[set] = (byte) ((hand + 1) & (WAYS - 1));
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    private int set(long hash) {
+        // Zobrist hashes are uniform already, fold the high bits in anyway
+        return (int) (hash ^ hash >>> 32) & setMask;
+    }
+}
@@ -0,0 +1,67 @@
+import java.util.Arrays;
+
+// cache of agent x level results for co-evolution (see CoEvolution)
+// every agent and level gets an id when it is created and keeps it for as
+// long as it survives (elites), so a result (agent id, level id) stays valid
+// across generations and only pairs with a new agent or level are simulated
+//
+// the cache is a fixed-size direct-mapped table: a pair lives in the one slot
+// its hash points to and a colliding pair overwrites it, so memory is bounded
+// and an evicted result is simply simulated again
+// it is not thread safe, CoEvolution looks up and stores results on one
+// thread and only runs the simulations in parallel
+public class FitnessMatrix {
+
+    private static final long EMPTY = -1;
+
+    private final long[] keys;
+    private final int[] values;
+    private final int mask;
+
+    // a table of at least "capacity" slots (rounded up to a power of two)
+    public FitnessMatrix(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity must be in 1..2^30");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        keys = new long[size];
+        values = new int[size];
+        mask = size - 1;
+        Arrays.fill(keys, EMPTY);
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    // result of agent on level, -1 if it is not cached
+    public int get(int agentId, int levelId) {
+        long key = key(agentId, levelId);
+        int slot = slot(key);
+        return keys[slot] == key ? values[slot] : -1;
+    }
+
+    public void put(int agentId, int levelId, int result) {
+        long key = key(agentId, levelId);
+        int slot = slot(key);
+        keys[slot] = key;
+        values[slot] = result;
+    }
+
+    private static long key(int agentId, int levelId) {
+        return (long) agentId << 32 | (levelId & 0xFFFFFFFFL);
+    }
+
+    private int slot(long key) {
+        // murmur3 finalizer, ids are sequential and must not map to neighbours
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key & mask;
+    }
+}
@@ -0,0 +1,630 @@
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.random.RandomGenerator;
+
+// the generation loop of both programs: AgentEvolution and LevelEvolution
+// only describe their problem (see Problem) and set the parameters below,
+// the engine owns everything else:
+// - the memory: genomes are packed as bytes in a double-buffered GenomeArena,
+//   fitness is a double[] per generation, nothing is allocated per genome
+// - the threads: breeding and evaluation run on a ForkJoinPool, every child
+//   is bred with its own SplittableRandom stream seeded by (seed, generation,
+//   index), so the result for a seed is the same for every thread count
+// - elitism, parent selection (EvolutionOptions.selection, optionally with
+//   novelty, see NoveltyArchive), the mutation rate, migration, the fitness
+//   cache, remote evaluation, statistics, history, metrics, stopping criteria
+//   and checkpoints
+// the hot path only hands primitive arrays and ranges to the problem (one
+// breed call per child, one Evaluator call per generation), no boxed fitness
+// and no lambda per individual
+//
+// one generation: the current generation is already evaluated, its
+// statistics set the mutation rate, the elites are kept, the other slots are
+// bred from parents of the current generation, migrants replace the last
+// children, the new ones are evaluated (from their first parent where the
+// Evaluator can) and the next generation becomes the current one
+public class GeneticEngine {
+
+    // what is evolved, breed and the Evaluator may be called from several
+    // threads at once
+    public interface Problem {
+        // name in metrics, reports and temporary files ("AgentEvolution")
+        String name();
+
+        // genes are 0..alphabet-1
+        int alphabet();
+
+        // engine byte of the snapshots of its runs (see RunSnapshot)
+        byte snapshotKind();
+
+        // write slot "child" of the next generation of "arena" from two parents
+        // in the current generation, drawing only from "rand" and writing only
+        // through the operators of the arena (which keep its hashes), returns
+        // the first gene at which the child may differ from parent1
+        int breed(GenomeArena arena, int parent1, int parent2, int child, double mutationRate,
+                RandomGenerator rand);
+
+        // evaluates the genomes of "arena" in this JVM
+        Evaluator evaluator(GenomeArena arena);
+
+        // evaluates genomes on EvaluationWorker processes
+        DistributedEvaluator remote(List<InetSocketAddress> workers) throws IOException;
+
+        // header and line of a generation in the stats stream
+        String statsHeader();
+
+        String statsLine(int gen, double best, double average, double worst, double mutationRate);
+
+        // line of a generation on the console of an interactive run
+        String progressLine(int gen, double best, double average, double worst, double mutationRate);
+
+        // title and y axis of the live chart of an interactive run
+        String chartTitle();
+
+        String chartLabel();
+
+        // end of an interactive run: the average fitness of every generation
+        // run and the best genome of each
+        void finish(double[] average, HistoryLog.Reader history);
+    }
+
+    // fitness of the genomes of a GenomeArena, double buffered like it: the
+    // current generation is read, the next one written, swap() flips them
+    public interface Evaluator {
+        // the whole current generation, from scratch
+        void evaluateAll(ForkJoinPool pool, double[] fitness);
+
+        // slot "to" of the next generation is individual "from" of the
+        // current one (elitism)
+        void keep(int from, int to);
+
+        // slots[0..count) of the next generation into fitness, slot s has the
+        // genes of parents[s] in the current generation before firstChanged[s]
+        // (parents[s] is -1 for a genome from elsewhere, a migrant)
+        // a score below "cutoff" only has to stay below it, such a genome
+        // cannot become an elite
+        void evaluate(ForkJoinPool pool, int[] slots, int count, int[] parents, int[] firstChanged, double cutoff,
+                double[] fitness);
+
+        // whether slot "slot" of the next generation got its exact fitness
+        // from the last evaluate, false for a genome stopped below the cutoff
+        // (it takes part in parent selection with its partial score, but not
+        // in the average and worst fitness of the statistics)
+        default boolean exact(int slot) {
+            return true;
+        }
+
+        // slot of the next generation whose fitness came from the cache, the
+        // evaluator knows nothing else about it
+        void skip(int slot);
+
+        void swap();
+
+        // whether the current generation is ranked as a whole (see rank),
+        // elitism and parent selection then go by that rank, the fitness is
+        // only reported
+        default boolean ranks() {
+            return false;
+        }
+
+        // selection key of every individual of the current generation, higher
+        // is better, from the whole generation (Pareto ranking)
+        default void rank(double[] key) {
+        }
+    }
+
+    private final Problem problem;
+    private double eliteFraction = 0.1;
+    private int minElites;
+    private boolean distinctParents;
+    private double mutationStep;
+    private double mutationCap = 1;
+    private String defaultSelection = "truncation:0.5";
+
+    public GeneticEngine(Problem problem) {
+        this.problem = problem;
+    }
+
+    // the best "fraction" of every generation (at least "minimum") is kept
+    // unchanged, default 10%
+    public GeneticEngine elitism(double fraction, int minimum) {
+        if (!(fraction >= 0 && fraction <= 1) || minimum < 0) {
+            throw new IllegalArgumentException("elite fraction must be in [0, 1], minimum not negative");
+        }
+        this.eliteFraction = fraction;
+        this.minElites = minimum;
+        return this;
+    }
+
+    // another elite fraction, with the same minimum
+    public GeneticEngine elitism(double fraction) {
+        return elitism(fraction, minElites);
+    }
+
+    public int eliteCount(int size) {
+        return Math.min(size, Math.max(minElites, (int) (size * eliteFraction)));
+    }
+
+    // draw the second parent again (up to 15 times) while it is the first one
+    public GeneticEngine distinctParents(boolean distinct) {
+        this.distinctParents = distinct;
+        return this;
+    }
+
+    // every generation in a row in which the best fitness moved by less than
+    // 0.01 raises the mutation rate by "step" times the base rate, up to
+    // "cap", default off
+    public GeneticEngine adaptiveMutation(double step, double cap) {
+        if (!(step >= 0) || !(cap > 0 && cap <= 1)) {
+            throw new IllegalArgumentException("mutation step must not be negative, cap in (0, 1]");
+        }
+        this.mutationStep = step;
+        this.mutationCap = cap;
+        return this;
+    }
+
+    // parent selection when the options have none (see Selection.parse)
+    public GeneticEngine defaultSelection(String selection) {
+        Selection.parse(selection);
+        this.defaultSelection = selection;
+        return this;
+    }
+
+    // evolve "population" for "generations" generations with random streams
+    // from "seed" on "threads" cores (1 = the calling thread), returns the
+    // last generation
+    // with a stats stream in the options the run is headless: one CSV line
+    // per generation instead of console output and windows
+    public int[][] run(int[][] population, int generations, double mutationRate, long seed, int threads,
+            EvolutionOptions options) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        PrintStream stats = options.stats();
+        GenomeArena arena = GenomeArena.of(population);
+        int size = arena.size();
+        int genomeLength = arena.genomeLength();
+        int eliteCount = eliteCount(size);
+        Selection.Strategy parents = parents(options);
+        IslandModel.Port port = options.migration();
+
+        double[] best = new double[generations];
+        double[] average = new double[generations];
+        double[] worst = new double[generations];
+        double lastBest = -1;
+        int stagnation = 0;
+        double[] fitness = new double[size];
+        boolean[] exact = new boolean[size];
+
+        // continue a snapshot of an earlier run, with its seed
+        int start = 0;
+        RunSnapshot resumed = options.openResume(problem.snapshotKind(), size, genomeLength, generations);
+        if (resumed != null) {
+            start = resumed.generation();
+            int[][] restored = resumed.population();
+            for (int i = 0; i < size; i++) {
+                arena.load(i, restored[i]);
+            }
+            resumed.statistics(best, average, worst);
+            lastBest = resumed.lastBest();
+            stagnation = resumed.stagnation();
+            resumed.fitness(fitness, exact);
+        }
+        long runSeed = resumed != null ? resumed.seed() : seed;
+
+        double[] nextFitness = new double[size];
+        boolean[] nextExact = new boolean[size];
+        int[] order = new int[size];
+        int[] firstParent = new int[size];
+        int[] firstChanged = new int[size];
+        int[] slots = new int[size];
+        int[] immigrantSlots = new int[size];
+
+        // the arena keeps the hashes of both generations for the fitness cache
+        FitnessCache cache = options.fitnessCache();
+        if (cache != null) {
+            arena.hashing(new GenomeHash(genomeLength, problem.alphabet()));
+        }
+
+        if (stats != null && port == null) {
+            stats.println(problem.statsHeader());
+        }
+
+        HistoryLog.Writer history = null;
+        RunSnapshot.Writer snapshots = null;
+        DistributedEvaluator remote = null;
+        EvolutionMetrics metrics = EvolutionMetrics.of(problem.name(), options);
+        StoppingCriteria.Tracker stopping = options.startStopping();
+        // the evaluations of a resumed run were counted by the original one
+        boolean stoppingRestored = stopping != null && resumed != null;
+        if (stoppingRestored) {
+            resumed.restore(stopping);
+        }
+        int ran = generations; // generations up to the last one run
+        ForkJoinPool pool = metrics.pool(threads);
+        try {
+            history = options.openHistory(problem.name(), genomeLength);
+            snapshots = options.openCheckpoint(problem.snapshotKind());
+            Evaluator evaluator;
+            if (options.workers() != null) {
+                remote = problem.remote(options.workers());
+                evaluator = new Remote(remote, arena);
+            } else {
+                evaluator = problem.evaluator(arena);
+            }
+            StatsRing progress = options.openProgress(problem.chartTitle(), generations, problem.chartLabel());
+
+            // the rank of a genome depends on its generation, it cannot be cached
+            boolean ranked = evaluator.ranks();
+            if (ranked && cache != null) {
+                throw new IllegalArgumentException("ranked runs cannot use a fitness cache");
+            }
+            double[] key = ranked ? new double[size] : null;
+
+            // parents by fitness and novelty, a resumed run continues the
+            // archive of the original one
+            NoveltyArchive novelty = options.noveltyNeighbours() > 0
+                    ? new NoveltyArchive(options.noveltyNeighbours(), size, genomeLength, problem.alphabet())
+                    : null;
+            if (novelty != null && resumed != null) {
+                resumed.restore(novelty);
+            }
+            double[] noveltyScore = novelty != null ? new double[size] : null;
+            double[] blended = novelty != null ? new double[size] : null;
+
+            // evaluate the first population from the start, a resumed one
+            // keeps the fitness it had (a partial score stays partial, as it
+            // would have in the original run), the evaluator still needs its
+            // own state of it; the metrics count it with the first generation
+            // of this run, which begins here
+            metrics.begin(start);
+            if (resumed != null) {
+                evaluator.evaluateAll(pool, new double[size]);
+            } else {
+                evaluator.evaluateAll(pool, fitness);
+                Arrays.fill(exact, true);
+            }
+            if (cache != null) {
+                for (int i = 0; i < size; i++) {
+                    if (exact[i]) {
+                        cache.put(arena.hash(i), fitness[i]);
+                    }
+                }
+            }
+            long firstEvaluations = stoppingRestored ? 0 : size; // counted with the first generation
+            int evaluatedFirst = size; // by evaluateAll, for the metrics
+
+            for (int gen = start; gen < generations; gen++) {
+                int generation = gen;
+                if (gen > start) {
+                    metrics.begin(gen);
+                }
+                metrics.phase(EvolutionMetrics.Phase.STATS);
+
+                // over the exactly scored genomes, the best one always is
+                double sum = 0;
+                int scored = 0;
+                double min = Double.POSITIVE_INFINITY;
+                double max = Double.NEGATIVE_INFINITY;
+                for (int i = 0; i < size; i++) {
+                    if (exact[i]) {
+                        sum += fitness[i];
+                        scored++;
+                        min = Math.min(min, fitness[i]);
+                        max = Math.max(max, fitness[i]);
+                    }
+                }
+                double mean = sum / scored;
+                best[gen] = max;
+                average[gen] = mean;
+                worst[gen] = min;
+                if (progress != null) {
+                    progress.offer(gen, max, mean, min);
+                }
+
+                // the mutation rate rises while the best fitness stagnates
+                if (Math.abs(max - lastBest) < 0.01) {
+                    stagnation++;
+                } else {
+                    stagnation = 0;
+                }
+                lastBest = max;
+                double rate = Math.min(mutationCap, mutationRate * (1 + stagnation * mutationStep));
+
+                // find the elites (best first), no full sort needed
+                // (and the emigrants, if there are more of them), by rank if
+                // the evaluator ranks the generation
+                metrics.phase(EvolutionMetrics.Phase.SELECTION);
+                if (ranked) {
+                    evaluator.rank(key);
+                }
+                double[] selectBy = ranked ? key : fitness;
+                int topCount = Math.max(1, Math.max(eliteCount, port != null ? port.migrants() : 0));
+                Selection.identity(order, size);
+                Selection.selectTop(selectBy, order, size, Math.min(size, topCount));
+                double[] parentsBy = selectBy;
+                if (novelty != null) {
+                    novelty.score(pool, arena, noveltyScore);
+                    NoveltyArchive.blend(selectBy, noveltyScore, options.noveltyWeight(), blended);
+                    parentsBy = blended;
+                }
+                parents.prepare(parentsBy, new SplittableRandom(AgentEvolution.streamSeed(runSeed, generation, -1)));
+
+                // elitism: copy the best unchanged
+                for (int i = 0; i < eliteCount; i++) {
+                    arena.copyToNext(order[i], i);
+                    evaluator.keep(order[i], i);
+                    nextFitness[i] = fitness[order[i]];
+                    nextExact[i] = exact[order[i]];
+                }
+
+                // breed the rest, every child from its own random stream
+                metrics.phase(EvolutionMetrics.Phase.BREEDING);
+                breedChildren(pool, arena, parents, eliteCount, rate, runSeed, generation, firstParent, firstChanged);
+
+                // island model: send the best to the neighbours and replace
+                // the last children with their migrants
+                metrics.phase(EvolutionMetrics.Phase.EVALUATION);
+                int immigrants = 0;
+                if (port != null && port.due(gen)) {
+                    int[][] emigrants = new int[Math.min(port.migrants(), size)][];
+                    for (int k = 0; k < emigrants.length; k++) {
+                        emigrants[k] = arena.toArray(order[k]);
+                    }
+                    port.emigrate(gen, emigrants);
+
+                    int slot = size - 1;
+                    for (int[] immigrant : port.immigrants()) {
+                        if (slot < eliteCount) {
+                            break;
+                        }
+                        arena.loadNext(slot, immigrant);
+                        firstParent[slot] = -1;
+                        immigrantSlots[immigrants++] = slot--;
+                    }
+                }
+
+                // evaluate what the cache does not know, a child that cannot
+                // beat the worst elite only has to be known to be worse
+                int children = 0;
+                for (int i = eliteCount; i < size - immigrants; i++) {
+                    if (!cached(cache, arena, i, evaluator, nextFitness)) {
+                        slots[children++] = i;
+                    }
+                }
+                int unknownImmigrants = 0;
+                for (int k = 0; k < immigrants; k++) {
+                    int slot = immigrantSlots[k];
+                    if (!cached(cache, arena, slot, evaluator, nextFitness)) {
+                        immigrantSlots[unknownImmigrants++] = slot;
+                    }
+                }
+                double cutoff = eliteCount > 0 && !ranked ? fitness[order[eliteCount - 1]] : Double.NEGATIVE_INFINITY;
+                evaluator.evaluate(pool, slots, children, firstParent, firstChanged, cutoff, nextFitness);
+                evaluator.evaluate(pool, immigrantSlots, unknownImmigrants, firstParent, firstChanged,
+                        Double.NEGATIVE_INFINITY, nextFitness);
+                int evaluations = children + unknownImmigrants;
+                for (int i = eliteCount; i < size; i++) {
+                    nextExact[i] = true;
+                }
+                for (int k = 0; k < children; k++) {
+                    nextExact[slots[k]] = evaluator.exact(slots[k]);
+                }
+                if (cache != null) {
+                    for (int k = 0; k < children; k++) {
+                        if (nextExact[slots[k]]) {
+                            cache.put(arena.hashNext(slots[k]), nextFitness[slots[k]]);
+                        }
+                    }
+                    for (int k = 0; k < unknownImmigrants; k++) {
+                        cache.put(arena.hashNext(immigrantSlots[k]), nextFitness[immigrantSlots[k]]);
+                    }
+                }
+                metrics.phase(EvolutionMetrics.Phase.STATS);
+
+                // best genome of the evaluated generation
+                if (history != null) {
+                    history.append(arena.current(), arena.offset(order[0]));
+                }
+
+                String stop = null;
+                if (stopping != null) {
+                    double diversity = options.stopping().needsDiversity()
+                            ? StoppingCriteria.diversity(arena, problem.alphabet())
+                            : 0;
+                    stop = stopping.check(firstEvaluations + evaluations, max, diversity);
+                    firstEvaluations = 0;
+                    if (stop != null) {
+                        StoppingCriteria.report(problem.name(), options, gen, stop);
+                        ran = gen + 1;
+                    }
+                }
+
+                if (stats != null && port != null) {
+                    stats.println(port.island() + "," + problem.statsLine(gen, max, mean, min, rate));
+                } else if (stats != null) {
+                    stats.println(problem.statsLine(gen, max, mean, min, rate));
+                } else {
+                    System.out.println(problem.progressLine(gen, max, mean, min, rate));
+                }
+                metrics.end(evaluatedFirst + evaluations, max, mean, min);
+                evaluatedFirst = 0;
+
+                arena.swap();
+                evaluator.swap();
+                double[] swapFitness = fitness;
+                fitness = nextFitness;
+                nextFitness = swapFitness;
+                boolean[] swapExact = exact;
+                exact = nextExact;
+                nextExact = swapExact;
+
+                if (options.checkpointDue(gen, generations, stop != null)) {
+                    snapshots.save(gen + 1, arena, fitness, exact, runSeed, lastBest, stagnation, stopping, novelty,
+                            best, average, worst);
+                }
+                if (stop != null) {
+                    break;
+                }
+            }
+
+            if (stats == null) {
+                problem.finish(Arrays.copyOf(average, ran), history.reopen());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+            if (remote != null) {
+                remote.close();
+            }
+            metrics.close();
+            AgentEvolution.closeQuietly(history);
+            AgentEvolution.closeQuietly(snapshots);
+        }
+        return arena.toPopulation();
+    }
+
+    // slots from..size of the next generation of "arena", every child from
+    // its own random stream, parents are already prepared
+    private void breedChildren(ForkJoinPool pool, GenomeArena arena, Selection.Strategy parents, int from,
+            double rate, long seed, int generation, int[] firstParent, int[] firstChanged) {
+        AgentEvolution.parallelFor(pool, from, arena.size(), i -> {
+            SplittableRandom rand = new SplittableRandom(AgentEvolution.streamSeed(seed, generation, i));
+            int parent1 = parents.select(2 * i, rand);
+            int parent2 = parents.select(2 * i + 1, rand);
+            for (int tries = 1; distinctParents && parent2 == parent1 && tries < 16; tries++) {
+                parent2 = parents.select(2 * i + 1, rand);
+            }
+            firstParent[i] = parent1;
+            firstChanged[i] = problem.breed(arena, parent1, parent2, i, rate, rand);
+        });
+    }
+
+    // parent selection of a run with these options
+    public Selection.Strategy parents(EvolutionOptions options) {
+        return options.selectionOr(defaultSelection);
+    }
+
+    // one generation of "arena" bred like in run, for a program that scores
+    // its population itself (CoEvolution): the elites by "fitness" are
+    // copied to the first slots, best first (order[i] is the slot elite i
+    // came from), the other slots are bred from "parents" with random
+    // streams from "seed" at the given rate, then the arena swaps
+    public void breed(GenomeArena arena, double[] fitness, int[] order, Selection.Strategy parents,
+            double mutationRate, long seed, int generation, ForkJoinPool pool) {
+        int size = arena.size();
+        int eliteCount = eliteCount(size);
+        Selection.identity(order, size);
+        Selection.selectTop(fitness, order, size, Math.max(1, Math.min(size, eliteCount)));
+        parents.prepare(fitness, new SplittableRandom(AgentEvolution.streamSeed(seed, generation, -1)));
+        for (int i = 0; i < eliteCount; i++) {
+            arena.copyToNext(order[i], i);
+        }
+        breedChildren(pool, arena, parents, eliteCount, mutationRate, seed, generation, new int[size],
+                new int[size]);
+        arena.swap();
+    }
+
+    // take the fitness of slot i of the next generation from the cache if it
+    // knows the genome
+    private static boolean cached(FitnessCache cache, GenomeArena arena, int i, Evaluator evaluator,
+            double[] fitness) {
+        if (cache == null) {
+            return false;
+        }
+        double value = cache.get(arena.hashNext(i));
+        if (Double.isNaN(value)) {
+            return false;
+        }
+        fitness[i] = value;
+        evaluator.skip(i);
+        return true;
+    }
+
+    // island model run: the population is split evenly over the islands of
+    // "model", each island runs its part on its own thread with a seed of its
+    // own and exchanges migrants with its neighbours
+    // island runs are headless, the stats stream of the options is required
+    // and gets an island column, returns the final islands one after another
+    public int[][] runIslands(int[][] population, int generations, double mutationRate, long seed,
+            IslandModel model, EvolutionOptions options) throws InterruptedException {
+        if (options.stats() == null) {
+            throw new IllegalArgumentException("island runs need a stats stream");
+        }
+        if (population.length < 2 * model.islands()) {
+            throw new IllegalArgumentException("every island needs at least 2 genomes");
+        }
+
+        int[][] result = new int[population.length][];
+        options.stats().println("island," + problem.statsHeader());
+        try {
+            model.run((island, port) -> {
+                int from = model.start(island, population.length);
+                int to = model.start(island + 1, population.length);
+                int[][] part = Arrays.copyOfRange(population, from, to);
+                int[][] evolved = run(part, generations, mutationRate, AgentEvolution.streamSeed(seed, -1, island),
+                        1, options.forIsland(port));
+                System.arraycopy(evolved, 0, result, from, evolved.length);
+            });
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return result;
+    }
+
+    // evaluation on EvaluationWorker processes, the genomes are sent as they
+    // are, the workers keep no state between generations
+    private static final class Remote implements Evaluator {
+
+        private final DistributedEvaluator remote;
+        private final GenomeArena arena;
+
+        Remote(DistributedEvaluator remote, GenomeArena arena) {
+            this.remote = remote;
+            this.arena = arena;
+        }
+
+        @Override
+        public void evaluateAll(ForkJoinPool pool, double[] fitness) {
+            double[] evaluated = remote.evaluate(arena.toPopulation());
+            System.arraycopy(evaluated, 0, fitness, 0, evaluated.length);
+        }
+
+        @Override
+        public void keep(int from, int to) {
+        }
+
+        @Override
+        public void evaluate(ForkJoinPool pool, int[] slots, int count, int[] parents, int[] firstChanged,
+                double cutoff, double[] fitness) {
+            if (count == 0) {
+                return;
+            }
+            int[][] genomes = new int[count][];
+            for (int k = 0; k < count; k++) {
+                genomes[k] = arena.toArrayNext(slots[k]);
+            }
+            double[] evaluated = remote.evaluate(genomes);
+            for (int k = 0; k < count; k++) {
+                fitness[slots[k]] = evaluated[k];
+            }
+        }
+
+        @Override
+        public void skip(int slot) {
+        }
+
+        @Override
+        public void swap() {
+        }
+    }
+}
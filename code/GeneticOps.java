@@ -0,0 +1,95 @@
+import java.util.random.RandomGenerator;
+
+// mutation and crossover operators shared by both engines, for int[] genomes
+// (the ones for genomes packed as bytes are in GenomeArena, with the same
+// random draws)
+//
+// mutation draws the distance to the next mutated gene from a geometric
+// distribution, so it costs one random number per mutation instead of one
+// per gene, crossover copies whole runs with System.arraycopy and uniform
+// crossover takes 64 parent choices from a single nextLong()
+public final class GeneticOps {
+
+    private GeneticOps() {
+    }
+
+    // log of the probability that a gene is not mutated, used by skip
+    static double logKeep(double rate) {
+        return Math.log1p(-rate);
+    }
+
+    // number of genes to leave alone before the next mutation, when every gene
+    // mutates with probability rate (logKeep = logKeep(rate), 0 < rate < 1)
+    static long skip(double logKeep, RandomGenerator rand) {
+        double gap = Math.floor(Math.log1p(-rand.nextDouble()) / logKeep);
+        return gap < Long.MAX_VALUE / 2 ? (long) gap : Long.MAX_VALUE / 2;
+    }
+
+    // every gene of genes[from..to) is replaced with probability rate by a
+    // uniform value in [0, alphabet) (which may be the old value)
+    // returns the first mutated index, "to" if none
+    public static int mutate(int[] genes, int from, int to, double rate, int alphabet, RandomGenerator rand) {
+        if (rate <= 0 || from >= to) {
+            return to;
+        }
+        if (rate >= 1) {
+            for (int i = from; i < to; i++) {
+                genes[i] = rand.nextInt(alphabet);
+            }
+            return from;
+        }
+        double logKeep = logKeep(rate);
+        long i = from + skip(logKeep, rand);
+        int first = i < to ? (int) i : to;
+        for (; i < to; i += 1 + skip(logKeep, rand)) {
+            genes[(int) i] = rand.nextInt(alphabet);
+        }
+        return first;
+    }
+
+    // like mutate, but a mutated gene always gets a different value, drawn
+    // with a single nextInt instead of retrying until it differs
+    public static int mutateDifferent(int[] genes, int from, int to, double rate, int alphabet,
+            RandomGenerator rand) {
+        if (rate <= 0 || from >= to) {
+            return to;
+        }
+        if (rate >= 1) {
+            for (int i = from; i < to; i++) {
+                genes[i] = different(genes[i], alphabet, rand);
+            }
+            return from;
+        }
+        double logKeep = logKeep(rate);
+        long i = from + skip(logKeep, rand);
+        int first = i < to ? (int) i : to;
+        for (; i < to; i += 1 + skip(logKeep, rand)) {
+            genes[(int) i] = different(genes[(int) i], alphabet, rand);
+        }
+        return first;
+    }
+
+    // uniform value in [0, alphabet) other than old
+    public static int different(int old, int alphabet, RandomGenerator rand) {
+        return (old + 1 + rand.nextInt(alphabet - 1)) % alphabet;
+    }
+
+    // one-point crossover: child gets parent1[0..point) and parent2[point..)
+    public static void onePoint(int[] parent1, int[] parent2, int[] child, int point) {
+        System.arraycopy(parent1, 0, child, 0, point);
+        System.arraycopy(parent2, point, child, point, child.length - point);
+    }
+
+    // uniform crossover: every gene comes from parent1 or parent2 with equal
+    // probability, the choices for 64 genes come from one nextLong
+    public static void uniform(int[] parent1, int[] parent2, int[] child, RandomGenerator rand) {
+        int length = child.length;
+        for (int block = 0; block < length; block += 64) {
+            long mask = rand.nextLong();
+            int end = Math.min(block + 64, length);
+            for (int i = block; i < end; i++, mask >>>= 1) {
+                child[i] = (mask & 1) != 0 ? parent1[i] : parent2[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,371 @@
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+// population store for genomes whose genes fit into a byte (agent moves 0-4,
+// world cells 0-2)
+// all genomes of a generation live in one contiguous array, genome i starts
+// at offset(i), and there are two such arrays: the current generation, which
+// is read, and the next generation, which is written while breeding
+// swap() flips them, so after the first generation nothing is allocated
+//
+// with hashing() on, the arena also keeps the Zobrist hash (see GenomeHash)
+// of every genome of both generations: the operators below update the hash of
+// the genome they write from the hashes of its parents while they write it,
+// only loaded genomes are hashed in full
+//
+// with trackChanges(limit) on, the operators also log for every slot of the
+// next generation the genes at which it may differ from its first parent (the
+// first parent of its crossover), up to "limit" of them, so an evaluator can
+// score a child from its parent without comparing the two
+public class GenomeArena {
+
+    private final int size;
+    private final int genomeLength;
+
+    private byte[] current;
+    private byte[] next;
+
+    private GenomeHash zobrist; // null while hashing is off
+    private long[] hashes;
+    private long[] nextHashes;
+
+    private int changeLimit; // 0 while the changes are not tracked
+    private int changeStride; // changeLimit + 64: a crossover block may run past the limit
+    private int[] changeLog; // slot i at i * changeStride
+    private int[] changeCounts; // -1 if there are more than changeLimit (or unknown)
+
+    public GenomeArena(int size, int genomeLength) {
+        if (size <= 0 || genomeLength <= 0) {
+            throw new IllegalArgumentException("population and genome length must be positive");
+        }
+        if ((long) size * genomeLength > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException(
+                    "population of " + size + " x " + genomeLength + " genes does not fit in one array");
+        }
+        this.size = size;
+        this.genomeLength = genomeLength;
+        this.current = new byte[size * genomeLength];
+        this.next = new byte[size * genomeLength];
+    }
+
+    // pack an int[][] population into a new arena
+    public static GenomeArena of(int[][] population) {
+        GenomeArena arena = new GenomeArena(population.length, population[0].length);
+        for (int i = 0; i < population.length; i++) {
+            arena.load(i, population[i]);
+        }
+        return arena;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int genomeLength() {
+        return genomeLength;
+    }
+
+    // start of genome "index" in current() and next()
+    public int offset(int index) {
+        return index * genomeLength;
+    }
+
+    public byte[] current() {
+        return current;
+    }
+
+    public byte[] next() {
+        return next;
+    }
+
+    public int get(int index, int gene) {
+        return current[index * genomeLength + gene];
+    }
+
+    // keep the hashes of the genomes from now on, the current generation is
+    // hashed in full
+    public void hashing(GenomeHash zobrist) {
+        if (zobrist.length() != genomeLength) {
+            throw new IllegalArgumentException("hash of genomes of length " + zobrist.length());
+        }
+        this.zobrist = zobrist;
+        this.hashes = new long[size];
+        this.nextHashes = new long[size];
+        for (int i = 0; i < size; i++) {
+            hashes[i] = zobrist.hash(current, i * genomeLength);
+        }
+    }
+
+    // hash of genome "index" of the current generation, with hashing on
+    public long hash(int index) {
+        return hashes[index];
+    }
+
+    // hash of slot "index" of the next generation, with hashing on
+    public long hashNext(int index) {
+        return nextHashes[index];
+    }
+
+    // log the changes of every slot of the next generation from now on, up
+    // to "limit" per slot
+    public void trackChanges(int limit) {
+        if (limit < 1 || (long) size * (limit + 64) > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("invalid change limit " + limit);
+        }
+        this.changeLimit = limit;
+        this.changeStride = limit + 64;
+        this.changeLog = new int[size * changeStride];
+        this.changeCounts = new int[size];
+        Arrays.fill(changeCounts, -1);
+    }
+
+    // number of genes logged for slot "index" of the next generation, the
+    // ones at which it may differ from its first parent (repeats possible),
+    // -1 if they are not known or more than the limit
+    public int changes(int index) {
+        return changeCounts[index] <= changeLimit ? changeCounts[index] : -1;
+    }
+
+    // the log of slot "index" starts at changeLog()[changeStart(index)]
+    public int[] changeLog() {
+        return changeLog;
+    }
+
+    public int changeStart(int index) {
+        return index * changeStride;
+    }
+
+    // write a genome into the current generation
+    public void load(int index, int[] genome) {
+        int offset = index * genomeLength;
+        for (int i = 0; i < genomeLength; i++) {
+            current[offset + i] = (byte) genome[i];
+        }
+        if (zobrist != null) {
+            hashes[index] = zobrist.hash(current, offset);
+        }
+    }
+
+    // write a genome into slot "index" of the next generation
+    public void loadNext(int index, int[] genome) {
+        int offset = index * genomeLength;
+        for (int i = 0; i < genomeLength; i++) {
+            next[offset + i] = (byte) genome[i];
+        }
+        if (zobrist != null) {
+            nextHashes[index] = zobrist.hash(next, offset);
+        }
+        if (changeCounts != null) {
+            changeCounts[index] = -1;
+        }
+    }
+
+    // unpack a genome of the current generation
+    public int[] toArray(int index) {
+        int[] genome = new int[genomeLength];
+        copyTo(index, genome);
+        return genome;
+    }
+
+    // unpack a genome of the current generation into "genome"
+    public void copyTo(int index, int[] genome) {
+        int offset = index * genomeLength;
+        for (int i = 0; i < genomeLength; i++) {
+            genome[i] = current[offset + i];
+        }
+    }
+
+    // unpack slot "index" of the next generation
+    public int[] toArrayNext(int index) {
+        int[] genome = new int[genomeLength];
+        int offset = index * genomeLength;
+        for (int i = 0; i < genomeLength; i++) {
+            genome[i] = next[offset + i];
+        }
+        return genome;
+    }
+
+    public int[][] toPopulation() {
+        int[][] population = new int[size][];
+        for (int i = 0; i < size; i++) {
+            population[i] = toArray(i);
+        }
+        return population;
+    }
+
+    // copy genome "from" of the current generation unchanged into slot "to"
+    // of the next generation (elitism)
+    public void copyToNext(int from, int to) {
+        System.arraycopy(current, from * genomeLength, next, to * genomeLength, genomeLength);
+        if (zobrist != null) {
+            nextHashes[to] = hashes[from];
+        }
+        if (changeCounts != null) {
+            changeCounts[to] = 0;
+        }
+    }
+
+    // one-point crossover into slot "child" of the next generation: genes
+    // before crossoverPoint come from parent1, the rest from parent2
+    // the child is parent1 with the genes of parent2 after the point, so its
+    // hash is that of parent1 updated at the genes where the two differ: the
+    // logged changes, or if they are not tracked (or too many) the differing
+    // genes of the shorter side, starting from the parent of the longer one
+    public void crossoverToNext(int parent1, int parent2, int crossoverPoint, int child) {
+        int offset1 = parent1 * genomeLength;
+        int offset2 = parent2 * genomeLength;
+        int childOffset = child * genomeLength;
+        System.arraycopy(current, offset1, next, childOffset, crossoverPoint);
+        System.arraycopy(current, offset2 + crossoverPoint, next, childOffset + crossoverPoint,
+                genomeLength - crossoverPoint);
+        int n = -1;
+        int log = child * changeStride;
+        if (changeCounts != null) {
+            n = 0;
+            for (int i = crossoverPoint; i < genomeLength && n <= changeLimit; i++) {
+                if (current[offset1 + i] != current[offset2 + i]) {
+                    changeLog[log + n++] = i;
+                }
+            }
+            changeCounts[child] = n;
+        }
+        if (zobrist == null) {
+            return;
+        }
+        if (n >= 0 && n <= changeLimit) {
+            long hash = hashes[parent1];
+            for (int k = 0; k < n; k++) {
+                int i = changeLog[log + k];
+                hash ^= zobrist.key(i, current[offset1 + i]) ^ zobrist.key(i, current[offset2 + i]);
+            }
+            nextHashes[child] = hash;
+        } else if (crossoverPoint < genomeLength - crossoverPoint) {
+            nextHashes[child] = hashes[parent2] ^ difference(offset1, offset2, 0, crossoverPoint);
+        } else {
+            nextHashes[child] = hashes[parent1] ^ difference(offset1, offset2, crossoverPoint, genomeLength);
+        }
+    }
+
+    // change of the hash between the genomes at offset1 and offset2 over
+    // genes [from, to) of the current generation, keys only where they differ
+    private long difference(int offset1, int offset2, int from, int to) {
+        long hash = 0;
+        for (int i = from; i < to; i++) {
+            byte a = current[offset1 + i];
+            byte b = current[offset2 + i];
+            if (a != b) {
+                hash ^= zobrist.key(i, a) ^ zobrist.key(i, b);
+            }
+        }
+        return hash;
+    }
+
+    // uniform crossover into slot "child" of the next generation: every gene
+    // comes from parent1 or parent2 with equal probability, the choices for 64
+    // genes come from one nextLong
+    // a gene taken from parent2 changes the hash of parent1 by the difference
+    // of the two keys (0 where the parents agree), added without a branch on
+    // the random choice, and logged as a change the same way, until the
+    // block in which the log passes its limit
+    public void uniformToNext(int parent1, int parent2, int child, RandomGenerator rand) {
+        int offset1 = parent1 * genomeLength;
+        int offset2 = parent2 * genomeLength;
+        int childOffset = child * genomeLength;
+        long hash = zobrist != null ? hashes[parent1] : 0;
+        int n = 0;
+        int log = child * changeStride;
+        for (int block = 0; block < genomeLength; block += 64) {
+            long mask = rand.nextLong();
+            int end = Math.min(block + 64, genomeLength);
+            if (changeCounts != null && n <= changeLimit) {
+                for (int i = block; i < end; i++, mask >>>= 1) {
+                    byte a = current[offset1 + i];
+                    byte b = current[offset2 + i];
+                    int fromSecond = (int) (mask & 1) ^ 1;
+                    next[childOffset + i] = fromSecond == 0 ? a : b;
+                    int d = a ^ b;
+                    changeLog[log + n] = i;
+                    n += fromSecond & ((d | -d) >>> 31); // from parent2 and different
+                    if (zobrist != null) {
+                        hash ^= (zobrist.key(i, a) ^ zobrist.key(i, b)) & -fromSecond;
+                    }
+                }
+            } else if (zobrist != null) {
+                for (int i = block; i < end; i++, mask >>>= 1) {
+                    byte a = current[offset1 + i];
+                    byte b = current[offset2 + i];
+                    long fromSecond = (mask & 1) - 1; // all ones if the gene comes from parent2
+                    next[childOffset + i] = (mask & 1) != 0 ? a : b;
+                    hash ^= (zobrist.key(i, a) ^ zobrist.key(i, b)) & fromSecond;
+                }
+            } else {
+                for (int i = block; i < end; i++, mask >>>= 1) {
+                    next[childOffset + i] = (mask & 1) != 0 ? current[offset1 + i] : current[offset2 + i];
+                }
+            }
+        }
+        if (zobrist != null) {
+            nextHashes[child] = hash;
+        }
+        if (changeCounts != null) {
+            changeCounts[child] = n;
+        }
+    }
+
+    // mutate slot "child" of the next generation in place: every gene is
+    // replaced with probability "rate" by a uniform value in [0, alphabet),
+    // which may be the old value, or with "different" always another one
+    // the same random draws as GeneticOps.mutate and mutateDifferent on an
+    // int[] genome, returns the first mutated gene (genome length if none)
+    // the mutated genes are logged as changes
+    public int mutateNext(int child, double rate, int alphabet, boolean different, RandomGenerator rand) {
+        if (rate <= 0) {
+            return genomeLength;
+        }
+        int offset = child * genomeLength;
+        if (rate >= 1) {
+            for (int i = 0; i < genomeLength; i++) {
+                setNext(child, offset, i, draw(next[offset + i], alphabet, different, rand));
+            }
+            return 0;
+        }
+        double logKeep = GeneticOps.logKeep(rate);
+        long i = GeneticOps.skip(logKeep, rand);
+        int first = i < genomeLength ? (int) i : genomeLength;
+        for (; i < genomeLength; i += 1 + GeneticOps.skip(logKeep, rand)) {
+            int gene = (int) i;
+            setNext(child, offset, gene, draw(next[offset + gene], alphabet, different, rand));
+        }
+        return first;
+    }
+
+    private static int draw(int old, int alphabet, boolean different, RandomGenerator rand) {
+        return different ? GeneticOps.different(old, alphabet, rand) : rand.nextInt(alphabet);
+    }
+
+    // gene "gene" of slot "child" (at "offset") of the next generation
+    // becomes "value"
+    private void setNext(int child, int offset, int gene, int value) {
+        if (zobrist != null) {
+            nextHashes[child] ^= zobrist.key(gene, next[offset + gene]) ^ zobrist.key(gene, value);
+        }
+        if (changeCounts != null) {
+            int n = changeCounts[child];
+            if (n >= 0 && n <= changeLimit) {
+                changeLog[child * changeStride + n] = gene;
+                changeCounts[child] = n + 1;
+            }
+        }
+        next[offset + gene] = (byte) value;
+    }
+
+    // the next generation becomes the current one
+    public void swap() {
+        byte[] tmp = current;
+        current = next;
+        next = tmp;
+        long[] swapHashes = hashes;
+        hashes = nextHashes;
+        nextHashes = swapHashes;
+    }
+}
@@ -0,0 +1,62 @@
+import java.util.SplittableRandom;
+
+// Zobrist hashing of genomes: every (position, value) pair has a random 64-bit
+// key and a genome hashes to the xor of the keys of its genes
+// changing gene i from a to b changes the hash by key(i, a) ^ key(i, b), so the
+// operators of GenomeArena keep the hash of a child up to date from the hash
+// of its parent while they write the genes, instead of hashing the finished
+// genome in another pass
+//
+// the keys only depend on the genome length and the alphabet, so two runs (or
+// islands) with genomes of the same shape agree on every hash and can share a
+// FitnessCache
+public final class GenomeHash {
+
+    private static final long SEED = 0x5A6F6272697374L; // "Zobrist"
+
+    private final int length;
+    private final int alphabet;
+    private final long[] keys; // key(i, v) = keys[i * alphabet + v]
+
+    public GenomeHash(int length, int alphabet) {
+        if (length < 1 || alphabet < 1 || (long) length * alphabet > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("invalid genome shape " + length + " x " + alphabet);
+        }
+        this.length = length;
+        this.alphabet = alphabet;
+        this.keys = new long[length * alphabet];
+        SplittableRandom random = new SplittableRandom(SEED ^ ((long) length << 8 | alphabet));
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextLong();
+        }
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public int alphabet() {
+        return alphabet;
+    }
+
+    // key of value v at position i
+    public long key(int i, int v) {
+        return keys[i * alphabet + v];
+    }
+
+    // full hash of a genome packed as bytes at genes[offset..offset + length()),
+    // for genomes that were not made by the operators (the first generation,
+    // a resumed population, migrants)
+    public long hash(byte[] genes, int offset) {
+        return hash(genes, offset, 0, length);
+    }
+
+    // xor of the keys of genes [from, to) of the genome at genes[offset..]
+    public long hash(byte[] genes, int offset, int from, int to) {
+        long hash = 0;
+        for (int i = from; i < to; i++) {
+            hash ^= keys[i * alphabet + genes[offset + i]];
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,310 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+// binary log of the best genome of every generation
+// instead of keeping generations x genomeLength genes in memory, a run appends
+// one record per generation holding only the genes that changed since the
+// previous generation, and the viewers replay the file through memory mapping
+//
+// layout (big endian):
+// header: int MAGIC, int VERSION, int genomeLength, int KEYFRAME_INTERVAL
+// record: byte FULL, genomeLength gene bytes
+// or:     byte DELTA, varint count, count x (varint index gap, byte gene)
+// every KEYFRAME_INTERVAL-th record is FULL, so replay can start anywhere
+// without going back to generation 0
+public class HistoryLog {
+
+    static final int MAGIC = 0x45564849; // "EVHI"
+    static final int VERSION = 1;
+    static final int KEYFRAME_INTERVAL = 1024;
+    static final int HEADER_BYTES = 16;
+
+    private static final byte FULL = 1;
+    private static final byte DELTA = 2;
+
+    public static Writer create(Path path, int genomeLength) throws IOException {
+        return new Writer(path, genomeLength);
+    }
+
+    public static Reader open(Path path) throws IOException {
+        return new Reader(path);
+    }
+
+    // called for every replayed generation with its best genome and the genes
+    // that differ from the previous generation (none for generation 0)
+    public interface Visitor {
+        void generation(int gen, byte[] genome, int[] changed, int changedCount);
+    }
+
+    public static class Writer implements Closeable {
+
+        private final Path path;
+        private final DataOutputStream out;
+        private final byte[] previous;
+        private final int[] changed;
+        private int generations;
+
+        private Writer(Path path, int genomeLength) throws IOException {
+            this.path = path;
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+            this.previous = new byte[genomeLength];
+            this.changed = new int[genomeLength];
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(genomeLength);
+            out.writeInt(KEYFRAME_INTERVAL);
+        }
+
+        public Path path() {
+            return path;
+        }
+
+        public int generations() {
+            return generations;
+        }
+
+        // close the log and open it for replay
+        public Reader reopen() {
+            try {
+                close();
+                return open(path);
+            } catch (IOException e) {
+                throw new UncheckedIOException("cannot reopen history log " + path, e);
+            }
+        }
+
+        // append the best genome of the next generation, packed at genes[offset..]
+        public void append(byte[] genes, int offset) {
+            try {
+                int length = previous.length;
+                if (generations % KEYFRAME_INTERVAL == 0) {
+                    out.writeByte(FULL);
+                    out.write(genes, offset, length);
+                    System.arraycopy(genes, offset, previous, 0, length);
+                } else {
+                    int count = 0;
+                    for (int i = 0; i < length; i++) {
+                        if (genes[offset + i] != previous[i]) {
+                            changed[count++] = i;
+                        }
+                    }
+                    out.writeByte(DELTA);
+                    writeVarint(count);
+                    int last = 0;
+                    for (int k = 0; k < count; k++) {
+                        int i = changed[k];
+                        writeVarint(i - last);
+                        out.writeByte(genes[offset + i]);
+                        previous[i] = genes[offset + i];
+                        last = i;
+                    }
+                }
+                generations++;
+            } catch (IOException e) {
+                throw new UncheckedIOException("cannot write history log", e);
+            }
+        }
+
+        public void append(int[] genome) {
+            byte[] genes = new byte[genome.length];
+            for (int i = 0; i < genome.length; i++) {
+                genes[i] = (byte) genome[i];
+            }
+            append(genes, 0);
+        }
+
+        private void writeVarint(int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                out.writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte(value);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    public static class Reader implements Closeable {
+
+        // files are mapped in segments, a single mapping is limited to 2 GB
+        private static final int SEGMENT_BITS = 30;
+
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer[] segments;
+        private final long size;
+        private final int genomeLength;
+        private final int keyframeInterval;
+        private final long[] keyframes; // file offset of every FULL record
+        private final int generations;
+
+        private Reader(Path path) throws IOException {
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+            this.size = channel.size();
+            int count = (int) ((size + (1L << SEGMENT_BITS) - 1) >>> SEGMENT_BITS);
+            this.segments = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long start = (long) i << SEGMENT_BITS;
+                long length = Math.min(1L << SEGMENT_BITS, size - start);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            }
+
+            if (size < HEADER_BYTES || readInt(0) != MAGIC || readInt(4) != VERSION) {
+                channel.close();
+                throw new IOException(path + " is not a history log");
+            }
+            this.genomeLength = readInt(8);
+            this.keyframeInterval = readInt(12);
+
+            // one pass over the records to count them and find the keyframes
+            long[] found = new long[16];
+            int gens = 0;
+            long pos = HEADER_BYTES;
+            long[] cursor = new long[1];
+            while (pos < size) {
+                if (gens % keyframeInterval == 0) {
+                    int k = gens / keyframeInterval;
+                    if (k == found.length) {
+                        found = Arrays.copyOf(found, k * 2);
+                    }
+                    found[k] = pos;
+                }
+                if (get(pos) == FULL) {
+                    pos += 1 + genomeLength;
+                } else {
+                    cursor[0] = pos + 1;
+                    int changes = readVarint(cursor);
+                    for (int c = 0; c < changes; c++) {
+                        readVarint(cursor);
+                        cursor[0]++;
+                    }
+                    pos = cursor[0];
+                }
+                gens++;
+            }
+            if (pos != size) {
+                channel.close();
+                throw new IOException(path + " ends in the middle of a record");
+            }
+            this.generations = gens;
+            this.keyframes = Arrays.copyOf(found, (gens + keyframeInterval - 1) / keyframeInterval);
+        }
+
+        public Path path() {
+            return path;
+        }
+
+        public int generations() {
+            return generations;
+        }
+
+        public int genomeLength() {
+            return genomeLength;
+        }
+
+        // replay generations [from, to) in order
+        // the genome and changed arrays passed to the visitor are reused
+        public void replay(int from, int to, Visitor visitor) {
+            if (from < 0 || to > generations || from > to) {
+                throw new IndexOutOfBoundsException("generations " + from + ".." + to + " of " + generations);
+            }
+            if (from == to) {
+                return;
+            }
+
+            byte[] genome = new byte[genomeLength];
+            int[] changed = new int[genomeLength];
+
+            // start at the keyframe before "from", so the changes of "from" are known
+            int gen = (Math.max(0, from - 1) / keyframeInterval) * keyframeInterval;
+            long[] cursor = { keyframes[gen / keyframeInterval] };
+            boolean first = true;
+
+            for (; gen < to; gen++, first = false) {
+                int count = 0;
+                long pos = cursor[0];
+                if (get(pos) == FULL) {
+                    for (int i = 0; i < genomeLength; i++) {
+                        byte gene = get(pos + 1 + i);
+                        if (gene != genome[i] && !first) {
+                            changed[count++] = i;
+                        }
+                        genome[i] = gene;
+                    }
+                    cursor[0] = pos + 1 + genomeLength;
+                } else {
+                    cursor[0] = pos + 1;
+                    int changes = readVarint(cursor);
+                    int i = 0;
+                    for (int c = 0; c < changes; c++) {
+                        i += readVarint(cursor);
+                        genome[i] = get(cursor[0]++);
+                        changed[count++] = i;
+                    }
+                }
+
+                if (gen >= from) {
+                    visitor.generation(gen, genome, changed, count);
+                }
+            }
+        }
+
+        // best genome of one generation
+        public int[] genome(int gen) {
+            int[] result = new int[genomeLength];
+            replay(gen, gen + 1, (g, genome, changed, count) -> {
+                for (int i = 0; i < genomeLength; i++) {
+                    result[i] = genome[i];
+                }
+            });
+            return result;
+        }
+
+        private byte get(long pos) {
+            return segments[(int) (pos >>> SEGMENT_BITS)].get((int) (pos & ((1L << SEGMENT_BITS) - 1)));
+        }
+
+        private int readInt(long pos) {
+            return (get(pos) & 0xFF) << 24 | (get(pos + 1) & 0xFF) << 16 | (get(pos + 2) & 0xFF) << 8
+                    | (get(pos + 3) & 0xFF);
+        }
+
+        private int readVarint(long[] cursor) {
+            int value = 0;
+            for (int shift = 0;; shift += 7) {
+                byte b = get(cursor[0]++);
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    // prints one CSV line per generation with the number of changed genes
+    // usage: java HistoryLog FILE
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: java HistoryLog FILE");
+            System.exit(BatchConfig.EXIT_USAGE);
+        }
+        try (Reader reader = open(Path.of(args[0]))) {
+            PrintStream out = new PrintStream(new BufferedOutputStream(System.out), false);
+            out.println("generation,changed");
+            reader.replay(0, reader.generations(), (gen, genome, changed, count) -> out.println(gen + "," + count));
+            out.flush();
+        }
+    }
+}
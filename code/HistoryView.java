@@ -0,0 +1,363 @@
+import java.awt.*;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.swing.*;
+
+// view of a HistoryLog as an image: one row per generation, one column per
+// gene, colored by a Palette
+// the image is never painted cell by cell: it is cut into TILE x TILE pixel
+// tiles that are rendered once into cached images, and paint only draws the
+// tiles that intersect the visible part of the scroll pane
+// zooming goes in powers of two: from zoom 0 up every cell is 2^zoom pixels
+// (the tiles of level 0, one pixel per cell, are drawn scaled up), below 0
+// the tiles of level -zoom are drawn, where every pixel is the mean color of
+// 2^level x 2^level cells, so a zoomed out view of any history is still only
+// a few tiles
+// tiles are built from the log on a background thread, the visible ones
+// first; until a tile is ready the part of the next coarser level that covers
+// it is drawn scaled up, or a gray box
+// ctrl + mouse wheel zooms around the pointer, the wheel alone scrolls
+public class HistoryView extends JComponent implements Scrollable {
+
+    private static final long serialVersionUID = 1L;
+    static final int TILE = 256;
+    private static final int MAX_ZOOM = 4;
+    private static final int CACHED_TILES = 192; // 256 x 256 x 4 bytes each
+    private static final Color PENDING = new Color(225, 225, 225);
+
+    // color (0xRRGGBB) of gene "value" in generation "gen", changed if it
+    // differs from the previous generation
+    public interface Palette {
+        int rgb(int gen, int value, boolean changed);
+    }
+
+    private final HistoryLog.Reader history;
+    private final Palette palette;
+    private final int generations;
+    private final int genomeLength;
+    private final int minZoom; // the whole history in one tile
+    private int zoom;
+
+    private final Map<Long, BufferedImage> tiles = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest) {
+            return size() > CACHED_TILES;
+        }
+    };
+    private final Set<Long> requested = ConcurrentHashMap.newKeySet();
+    private final LinkedBlockingDeque<Long> queue = new LinkedBlockingDeque<>();
+    private volatile long[] visible = new long[0]; // tiles wanted by the last paint
+    private final Thread builder;
+
+    public HistoryView(HistoryLog.Reader history, Palette palette) {
+        this.history = history;
+        this.palette = palette;
+        this.generations = Math.max(1, history.generations());
+        this.genomeLength = history.genomeLength();
+        int cells = Math.max(generations, genomeLength);
+        int level = 0;
+        while ((long) TILE << level < cells) {
+            level++;
+        }
+        this.minZoom = -level;
+        this.zoom = 0;
+
+        setOpaque(true);
+        setBackground(new Color(245, 245, 245));
+        addMouseWheelListener(this::wheel);
+
+        builder = new Thread(this::buildTiles, "history-tiles");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    // a scroll pane with the view and the generation numbers on the left,
+    // zoomed so the genome fits "width" pixels
+    public JScrollPane inScrollPane(int width) {
+        int fit = 0;
+        while (fit > minZoom && cellsToPixels(genomeLength, fit) > width) {
+            fit--;
+        }
+        while (fit < MAX_ZOOM && cellsToPixels(genomeLength, fit + 1) <= width) {
+            fit++;
+        }
+        zoom = fit;
+        JScrollPane scroll = new JScrollPane(this);
+        scroll.setRowHeaderView(new GenerationLabels());
+        scroll.getViewport().setBackground(getBackground());
+        return scroll;
+    }
+
+    public int zoom() {
+        return zoom;
+    }
+
+    // change the zoom keeping the cell at "anchor" (view coordinates) where
+    // it is on the screen
+    public void setZoom(int newZoom, Point anchor) {
+        newZoom = Math.max(minZoom, Math.min(MAX_ZOOM, newZoom));
+        if (newZoom == zoom) {
+            return;
+        }
+        JViewport viewport = (JViewport) SwingUtilities.getAncestorOfClass(JViewport.class, this);
+        Point position = viewport != null ? viewport.getViewPosition() : new Point();
+        double factor = Math.scalb(1.0, newZoom - zoom);
+        zoom = newZoom;
+        JScrollPane scroll = (JScrollPane) SwingUtilities.getAncestorOfClass(JScrollPane.class, this);
+        if (scroll == null) {
+            revalidate();
+            repaint();
+            return;
+        }
+        // lay out now (with the generation labels), then move to the anchor
+        invalidate();
+        scroll.getRowHeader().getView().invalidate();
+        scroll.validate();
+        Dimension extent = viewport.getExtentSize();
+        Dimension size = getPreferredSize();
+        int x = (int) Math.round(anchor.x * factor) - (anchor.x - position.x);
+        int y = (int) Math.round(anchor.y * factor) - (anchor.y - position.y);
+        x = Math.max(0, Math.min(x, size.width - extent.width));
+        y = Math.max(0, Math.min(y, size.height - extent.height));
+        viewport.setViewPosition(new Point(x, y));
+        scroll.repaint();
+    }
+
+    private void wheel(MouseWheelEvent e) {
+        if (e.isControlDown()) {
+            setZoom(zoom - e.getWheelRotation(), e.getPoint());
+        } else {
+            // let the scroll pane scroll
+            getParent().dispatchEvent(SwingUtilities.convertMouseEvent(this, e, getParent()));
+        }
+    }
+
+    // pixels of "cells" cells at a zoom
+    private static int cellsToPixels(int cells, int zoom) {
+        return zoom >= 0 ? cells << zoom : (cells + (1 << -zoom) - 1) >> -zoom;
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        return new Dimension(cellsToPixels(genomeLength, zoom), cellsToPixels(generations, zoom));
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(getSize());
+        }
+        g.setColor(getBackground());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+        int level = Math.max(0, -zoom);
+        int size = zoom > 0 ? TILE << zoom : TILE; // screen pixels of a tile
+        Dimension image = getPreferredSize();
+        int right = Math.min(clip.x + clip.width, image.width);
+        int bottom = Math.min(clip.y + clip.height, image.height);
+
+        // request the missing tiles of the whole viewport, not only of the
+        // clip, which is a thin strip while scrolling
+        Rectangle view = getVisibleRect();
+        java.util.List<Long> wanted = new ArrayList<>();
+        for (int row = view.y / size; row * size < Math.min(view.y + view.height, image.height); row++) {
+            for (int col = view.x / size; col * size < Math.min(view.x + view.width, image.width); col++) {
+                wanted.add(key(level, row, col));
+            }
+        }
+        visible = wanted.stream().mapToLong(Long::longValue).toArray();
+        for (long key : wanted) {
+            if (cached(key) == null && requested.add(key)) {
+                queue.addFirst(key);
+            }
+        }
+
+        for (int row = clip.y / size; row * size < bottom; row++) {
+            for (int col = clip.x / size; col * size < right; col++) {
+                int x = col * size;
+                int y = row * size;
+                BufferedImage tile = cached(key(level, row, col));
+                if (tile != null) {
+                    g.drawImage(tile, x, y, tile.getWidth() * size / TILE, tile.getHeight() * size / TILE, null);
+                } else if (!drawCoarser(g, level, row, col, x, y, size)) {
+                    g.setColor(PENDING);
+                    g.fillRect(x, y, Math.min(size, image.width - x), Math.min(size, image.height - y));
+                }
+            }
+        }
+    }
+
+    // the quarter of the tile of level + 1 that covers tile (level, row, col)
+    private boolean drawCoarser(Graphics g, int level, int row, int col, int x, int y, int size) {
+        BufferedImage parent = cached(key(level + 1, row >> 1, col >> 1));
+        if (parent == null) {
+            return false;
+        }
+        int half = TILE / 2;
+        int sx = (col & 1) * half;
+        int sy = (row & 1) * half;
+        int w = Math.min(half, parent.getWidth() - sx);
+        int h = Math.min(half, parent.getHeight() - sy);
+        if (w <= 0 || h <= 0) {
+            return false;
+        }
+        g.drawImage(parent, x, y, x + w * size / half, y + h * size / half, sx, sy, sx + w, sy + h, null);
+        return true;
+    }
+
+    private BufferedImage cached(long key) {
+        synchronized (tiles) {
+            return tiles.get(key);
+        }
+    }
+
+    private static long key(int level, int row, int col) {
+        return (long) level << 56 | (long) row << 28 | col;
+    }
+
+    // background thread: build the requested tiles, newest first, skipping
+    // the ones that scrolled out of view before their turn
+    private void buildTiles() {
+        try {
+            while (true) {
+                long key = queue.takeFirst();
+                boolean wanted = false;
+                for (long v : visible) {
+                    wanted |= v == key;
+                }
+                if (wanted && cached(key) == null) {
+                    BufferedImage tile = build((int) (key >>> 56), (int) (key >>> 28) & 0xFFFFFFF,
+                            (int) key & 0xFFFFFFF);
+                    synchronized (tiles) {
+                        tiles.put(key, tile);
+                    }
+                    repaint();
+                }
+                requested.remove(key);
+            }
+        } catch (InterruptedException e) {
+            // the view is gone
+        }
+    }
+
+    // tile (level, row, col): every pixel is the mean color of its
+    // 2^level x 2^level cells, replayed from the log in one pass
+    private BufferedImage build(int level, int row, int col) {
+        int scale = 1 << level;
+        int span = TILE << level; // cells per tile side
+        int gen0 = row * span;
+        int gene0 = col * span;
+        int gen1 = Math.min(gen0 + span, history.generations());
+        int gene1 = Math.min(gene0 + span, genomeLength);
+        int width = (gene1 - gene0 + scale - 1) >> level;
+        int height = Math.max(1, (gen1 - gen0 + scale - 1) >> level);
+        int[] pixels = new int[width * height];
+
+        // color sums of the pixel row being filled
+        long[] red = new long[width];
+        long[] green = new long[width];
+        long[] blue = new long[width];
+        boolean[] marked = new boolean[gene1 - gene0];
+
+        if (gen0 < gen1) {
+            history.replay(gen0, gen1, (gen, genome, changed, count) -> {
+                for (int k = 0; k < count; k++) {
+                    if (changed[k] >= gene0 && changed[k] < gene1) {
+                        marked[changed[k] - gene0] = true;
+                    }
+                }
+                for (int c = gene0; c < gene1; c++) {
+                    int rgb = palette.rgb(gen, genome[c], marked[c - gene0]);
+                    int px = (c - gene0) >> level;
+                    red[px] += rgb >> 16 & 0xFF;
+                    green[px] += rgb >> 8 & 0xFF;
+                    blue[px] += rgb & 0xFF;
+                }
+                for (int k = 0; k < count; k++) {
+                    if (changed[k] >= gene0 && changed[k] < gene1) {
+                        marked[changed[k] - gene0] = false;
+                    }
+                }
+
+                // last generation of a pixel row
+                int y = gen - gen0;
+                if ((y + 1) % scale == 0 || gen == gen1 - 1) {
+                    int rows = y % scale + 1;
+                    for (int px = 0; px < width; px++) {
+                        long cells = (long) rows * Math.min(scale, gene1 - gene0 - px * scale);
+                        pixels[(y >> level) * width + px] = 0xFF000000 | (int) (red[px] / cells) << 16
+                                | (int) (green[px] / cells) << 8 | (int) (blue[px] / cells);
+                    }
+                    Arrays.fill(red, 0);
+                    Arrays.fill(green, 0);
+                    Arrays.fill(blue, 0);
+                }
+            });
+        }
+
+        BufferedImage tile = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        tile.setRGB(0, 0, width, height, pixels, 0, width);
+        return tile;
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return 16;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return false;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return false;
+    }
+
+    // "Gen N" next to the rows, spaced at least 20 pixels apart
+    private final class GenerationLabels extends JComponent {
+
+        private static final long serialVersionUID = 1L;
+        GenerationLabels() {
+            setFont(new Font("Monospaced", Font.PLAIN, 12));
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            return new Dimension(80, HistoryView.this.getPreferredSize().height);
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            Rectangle clip = g.getClipBounds();
+            g.setColor(HistoryView.this.getBackground());
+            g.fillRect(clip.x, clip.y, clip.width, clip.height);
+            g.setColor(Color.BLACK);
+
+            double pixelsPerGen = Math.scalb(1.0, zoom);
+            int step = 1;
+            for (int k = 0; step * pixelsPerGen < 20; k++) {
+                step = (k % 3 == 0 ? 2 : k % 3 == 1 ? 5 : 10) * (int) Math.pow(10, k / 3);
+            }
+            int first = (int) (clip.y / pixelsPerGen) / step * step;
+            for (int gen = first; gen < generations && gen * pixelsPerGen < clip.y + clip.height + 20; gen += step) {
+                int y = (int) ((gen + 1) * pixelsPerGen);
+                g.drawString("Gen " + gen, 10, Math.max(12, y));
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// island model: the population is split into sub-populations ("islands") that
+// evolve on their own threads, and every "interval" generations each island
+// sends copies of its best "migrants" genomes to its neighbours, where they
+// replace the last children bred
+//
+// the exchange is lock-free: an island publishes its latest migrants into its
+// slot of an AtomicReferenceArray and takes whatever its neighbours published
+// last, so a fast island never waits for a slow one (which also means island
+// runs with migration are not bit-for-bit reproducible)
+public class IslandModel {
+
+    public enum Topology {
+        // island i receives from island i - 1
+        RING,
+        // every island receives from all others
+        FULL;
+
+        public static Topology parse(String name) {
+            switch (name.trim()) {
+                case "ring":
+                    return RING;
+                case "full":
+                    return FULL;
+                default:
+                    throw new IllegalArgumentException("unknown topology: " + name);
+            }
+        }
+    }
+
+    // migrants published by an island
+    private static final class Batch {
+        final int generation;
+        final int[][] genomes;
+
+        Batch(int generation, int[][] genomes) {
+            this.generation = generation;
+            this.genomes = genomes;
+        }
+    }
+
+    // the work of one island, run on its own thread
+    public interface IslandTask {
+        void run(int island, Port port) throws Exception;
+    }
+
+    private final int islands;
+    private final Topology topology;
+    private final int interval;
+    private final int migrants;
+    private final AtomicReferenceArray<Batch> outbox;
+
+    public IslandModel(int islands, Topology topology, int interval, int migrants) {
+        if (islands < 1 || interval < 1 || migrants < 0) {
+            throw new IllegalArgumentException(
+                    "islands and migration interval must be at least 1, migrants at least 0");
+        }
+        this.islands = islands;
+        this.topology = topology;
+        this.interval = interval;
+        this.migrants = migrants;
+        this.outbox = new AtomicReferenceArray<>(islands);
+    }
+
+    public int islands() {
+        return islands;
+    }
+
+    // island model from the batch options, null if --islands is not given
+    static IslandModel fromConfig(BatchConfig config) {
+        if (!config.has("islands")) {
+            return null;
+        }
+        return new IslandModel(config.getInt("islands"), Topology.parse(config.getString("topology", "ring")),
+                config.getInt("migration-interval", 10), config.getInt("migrants", 2));
+    }
+
+    // the part of a population of "size" individuals that belongs to "island":
+    // [start(island), start(island + 1))
+    public int start(int island, int size) {
+        return (int) ((long) size * island / islands);
+    }
+
+    // run the task of every island on its own thread and wait for all of them
+    public void run(IslandTask task) throws InterruptedException, ExecutionException {
+        ExecutorService pool = Executors.newFixedThreadPool(islands);
+        try {
+            List<Future<?>> running = new ArrayList<>();
+            for (int i = 0; i < islands; i++) {
+                Port port = new Port(i);
+                running.add(pool.submit(() -> {
+                    task.run(port.island(), port);
+                    return null;
+                }));
+            }
+            for (Future<?> f : running) {
+                f.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // what an engine sees of the island model
+    public final class Port {
+
+        private final int island;
+        private final int[] lastSeen; // generation of the last batch taken per island
+
+        private Port(int island) {
+            this.island = island;
+            this.lastSeen = new int[islands];
+            Arrays.fill(lastSeen, -1);
+        }
+
+        public int island() {
+            return island;
+        }
+
+        public int migrants() {
+            return migrants;
+        }
+
+        // true if this island exchanges migrants after generation gen
+        public boolean due(int gen) {
+            return islands > 1 && migrants > 0 && gen > 0 && gen % interval == 0;
+        }
+
+        // publish copies of this island's best genomes
+        public void emigrate(int gen, int[][] genomes) {
+            outbox.set(island, new Batch(gen, genomes));
+        }
+
+        // new migrants from the neighbours since the last call, the
+        // migrants() genomes of every neighbour (all other islands with FULL),
+        // taken round-robin over the neighbours so that an engine with fewer
+        // free slots than migrants still gets the best of each
+        public List<int[]> immigrants() {
+            List<Batch> batches = new ArrayList<>();
+            for (int other = 0; other < islands; other++) {
+                boolean neighbour = topology == Topology.FULL ? other != island
+                        : other == (island + islands - 1) % islands;
+                if (!neighbour) {
+                    continue;
+                }
+                Batch batch = outbox.get(other);
+                if (batch != null && batch.generation != lastSeen[other]) {
+                    lastSeen[other] = batch.generation;
+                    batches.add(batch);
+                }
+            }
+
+            int longest = 0;
+            for (Batch batch : batches) {
+                longest = Math.max(longest, batch.genomes.length);
+            }
+            List<int[]> result = new ArrayList<>();
+            for (int k = 0; k < longest; k++) {
+                for (Batch batch : batches) {
+                    if (k < batch.genomes.length) {
+                        result.add(batch.genomes[k]);
+                    }
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+import java.util.concurrent.ForkJoinPool;
+
+// the GeneticEngine.Evaluator of LevelEvolution: keeps the fitness
+// components of every level of the current and the next generation (see
+// LevelFitness), a child is scored by updating the components of its first
+// parent at the cells the arena logged as changed while breeding it (see
+// GenomeArena.trackChanges), instead of comparing the two, or from scratch if
+// there are more than LevelFitness.derivable of them
+// known[i] tells whether scored[i] holds level i, levels found in the cache
+// are not scored, so their children are scored from scratch
+// in Pareto mode the generation is ranked by the components of the fitness
+// as objectives: by front, then by crowding distance (see ParetoSort)
+public class LevelEvaluator implements GeneticEngine.Evaluator {
+
+    private final GenomeArena arena;
+    private final boolean pareto;
+    private double[] objectives; // of the current generation, level i at i * LevelFitness.OBJECTIVES
+    private LevelFitness[] scored;
+    private LevelFitness[] nextScored;
+    private boolean[] known;
+    private boolean[] nextKnown;
+
+    public LevelEvaluator(GenomeArena arena, boolean pareto) {
+        this.arena = arena;
+        this.pareto = pareto;
+        this.known = new boolean[arena.size()];
+        this.nextKnown = new boolean[arena.size()];
+        arena.trackChanges(LevelFitness.derivable(arena.genomeLength()));
+    }
+
+    @Override
+    public void evaluateAll(ForkJoinPool pool, double[] fitness) {
+        int size = arena.size();
+        int length = arena.genomeLength();
+        if (scored == null) {
+            scored = new LevelFitness[size];
+            nextScored = new LevelFitness[size];
+        }
+        AgentEvolution.parallelFor(pool, 0, size, i -> {
+            if (scored[i] == null) {
+                scored[i] = new LevelFitness(arena.current(), arena.offset(i), length);
+                nextScored[i] = new LevelFitness(arena.current(), arena.offset(i), length);
+            } else {
+                scored[i].reset(arena.current(), arena.offset(i));
+            }
+            known[i] = true;
+            fitness[i] = scored[i].score();
+        });
+    }
+
+    @Override
+    public void keep(int from, int to) {
+        nextKnown[to] = known[from];
+        if (known[from]) {
+            nextScored[to].copyFrom(scored[from]);
+        }
+    }
+
+    // migrants, the children of unknown parents and the ones with too many
+    // changes are scored from scratch (the change log makes firstChanged of
+    // no use here)
+    @Override
+    public void evaluate(ForkJoinPool pool, int[] slots, int count, int[] parents, int[] firstChanged,
+            double cutoff, double[] fitness) {
+        byte[] genes = arena.next();
+        AgentEvolution.parallelFor(pool, 0, count, k -> {
+            int slot = slots[k];
+            int parent = parents[slot];
+            int changes = arena.changes(slot);
+            if (parent >= 0 && known[parent] && changes >= 0) {
+                nextScored[slot].derive(scored[parent], genes, arena.offset(slot), arena.changeLog(),
+                        arena.changeStart(slot), changes);
+            } else {
+                nextScored[slot].reset(genes, arena.offset(slot));
+            }
+            nextKnown[slot] = true;
+            fitness[slot] = nextScored[slot].score();
+        });
+    }
+
+    @Override
+    public void skip(int slot) {
+        nextKnown[slot] = false;
+    }
+
+    @Override
+    public boolean ranks() {
+        return pareto;
+    }
+
+    @Override
+    public void rank(double[] key) {
+        int size = arena.size();
+        int m = LevelFitness.OBJECTIVES;
+        if (objectives == null) {
+            objectives = new double[size * m];
+        }
+        for (int i = 0; i < size; i++) {
+            scored[i].objectives(objectives, i * m);
+        }
+        int[] fronts = ParetoSort.fronts(objectives, size, m);
+        double[] crowding = ParetoSort.crowding(objectives, size, m, fronts);
+        for (int i = 0; i < size; i++) {
+            key[i] = ParetoSort.key(fronts[i], crowding[i]);
+        }
+    }
+
+    @Override
+    public void swap() {
+        LevelFitness[] swapScored = scored;
+        scored = nextScored;
+        nextScored = swapScored;
+        boolean[] swapKnown = known;
+        known = nextKnown;
+        nextKnown = swapKnown;
+    }
+}
@@ -1,7 +1,11 @@
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.List;
+import java.util.random.RandomGenerator;
 import javax.swing.*;
 import java.awt.*;
-import java.awt.geom.Line2D;
 
 public class LevelEvolution {
 
@@ -22,325 +26,396 @@ public class LevelEvolution {
     }
 
     // CROSSOVER
+    // uniform, every cell from either parent (64 cells per random number)
     public static int[] crossover(int[] parent1, int[] parent2, Random rand) {
-        int length = parent1.length;
-        int[] child = new int[length];
-        for (int i = 0; i < length; i++) {
-            if (rand.nextBoolean())
-                child[i] = parent1[i];
-            else
-                child[i] = parent2[i];
-        }
+        int[] child = new int[parent1.length];
+        GeneticOps.uniform(parent1, parent2, child, rand);
         return child;
     }
 
     // MUTATION
+    // a mutated cell always changes to one of the two other values,
+    // mutation sites are sampled by geometric skipping (see GeneticOps)
     public static void mutate(int[] genome, double mutationRate, Random rand) {
-        for (int i = 0; i < genome.length; i++) {
-            if (rand.nextDouble() < mutationRate) {
-                int oldVal = genome[i];
-                int newVal;
-                do {
-                    newVal = rand.nextInt(3);
-                } while (newVal == oldVal);
-                genome[i] = newVal;
-            }
-        }
+        GeneticOps.mutateDifferent(genome, 0, genome.length, mutationRate, 3, rand);
     }
 
     // FITNESS FUNCTION
+    // all components are counted in one pass over the world and combined by
+    // LevelFitness.score, LevelFitness also keeps them up to date for single
+    // cell changes
     public static double evaluateWorld(int[] world) {
-        double score = 100.0;
-
-        // penalize impossible transitions
-        for (int i = 0; i + 1 < world.length; i++) {
-            if ((world[i] == 1 && world[i + 1] == 2) ||
-                    (world[i] == 2 && world[i + 1] == 1)) {
-                score -= 40;
-            }
-        }
-
-        // reward balanced obstacle ratio
-        // ideal ratio set to 30%
+        int n = world.length;
+        int transitions = 0;
         int obstacles = 0;
-        for (int w : world)
-            if (w != 0)
-                obstacles++;
-
-        double ratio = (double) obstacles / world.length;
-        double ideal = 0.3;
-        double diff = Math.abs(ideal - ratio);
-        score -= diff * 100;
-
-        // penalize long empty regions
+        int patterns = 0;
+        int bushes = 0, birds = 0;
         int emptyRun = 0, maxEmpty = 0;
-        for (int w : world) {
-            if (w == 0)
-                emptyRun++;
-            else {
-                maxEmpty = Math.max(maxEmpty, emptyRun);
-                emptyRun = 0;
-            }
-        }
-        maxEmpty = Math.max(maxEmpty, emptyRun);
-        score -= maxEmpty * 3;
-
-        // reward diversity of obstacles
-        boolean hasBush = false, hasBird = false;
-        for (int w : world) {
-            if (w == 1)
-                hasBush = true;
-            if (w == 2)
-                hasBird = true;
-        }
-        if (hasBush && hasBird)
-            score += 20;
-
-        // reward "interesting" obstacle patterns
-        // in this case just [empty, bush/bird, empty]
-        for (int i = 0; i + 2 < world.length; i++) {
-            if (world[i] == 0 && world[i + 1] != 0 && world[i + 2] == 0)
-                score += 5;
+
+        // one pass; the counts are updated with 0/1 flags instead of branches,
+        // which random levels make unpredictable
+        for (int i = 0; i < n; i++) {
+            int w = world[i];
+            int next = i + 1 < n ? world[i + 1] : 0;
+            int after = i + 2 < n ? world[i + 2] : 1;
+            int empty = LevelFitness.is(w, 0);
+
+            // impossible transitions (bush next to bird)
+            transitions += (LevelFitness.is(w, 1) & LevelFitness.is(next, 2))
+                    | (LevelFitness.is(w, 2) & LevelFitness.is(next, 1));
+
+            // "interesting" obstacle patterns: [empty, bush/bird, empty]
+            patterns += empty & (LevelFitness.is(next, 0) ^ 1) & LevelFitness.is(after, 0);
+
+            // obstacle ratio, obstacle diversity and long empty regions
+            obstacles += empty ^ 1;
+            bushes += LevelFitness.is(w, 1);
+            birds += LevelFitness.is(w, 2);
+            emptyRun = (emptyRun + 1) * empty;
+            maxEmpty = Math.max(maxEmpty, emptyRun);
         }
 
-        return score;
-        // return Math.max(0, score);
+        return LevelFitness.score(n, transitions, obstacles, maxEmpty, bushes > 0 && birds > 0, patterns);
     }
 
     // TOURNAMENT SELECTION
     public static int tournamentSelect(double[] fitness, int tournamentSize, Random rand) {
-        int bestIndex = rand.nextInt(fitness.length);
-        double bestFit = fitness[bestIndex];
-        for (int i = 1; i < tournamentSize; i++) {
-            int idx = rand.nextInt(fitness.length);
-            if (fitness[idx] > bestFit) {
-                bestFit = fitness[idx];
-                bestIndex = idx;
-            }
-        }
-        return bestIndex;
+        return Selection.tournament(fitness, tournamentSize, rand);
     }
 
     // EVOLUTION LOOP
+    // the GeneticEngine with random streams from "seed" on "threads" cores
+    // (1 = the calling thread), the result for a seed is the same for any
+    // thread count
+    public static int[][] evolveWorlds(int[][] population, int generations, double mutationRate, long seed,
+            int threads) {
+        return evolveWorlds(population, generations, mutationRate, seed, threads, new EvolutionOptions());
+    }
+
+    // with a stats stream in the options the run is headless: instead of printing
+    // and plotting, one CSV line "generation,best,average,worst,mutation" is written
+    // per generation, the best worlds only go to a history log if one is set
+    // with workers in the options the fitness is evaluated by EvaluationWorker
+    // processes (see DistributedEvaluator)
+    // returns the last population
+    public static int[][] evolveWorlds(int[][] population, int generations, double mutationRate, long seed,
+            int threads, EvolutionOptions options) {
+        return engine(options.pareto()).run(population, generations, mutationRate, seed, threads, options);
+    }
+
+    // on the calling thread, with the seed drawn from "rand"
     public static void evolveWorlds(int[][] population, int generations, double mutationRate, Random rand) {
-        int popSize = population.length;
-        int genomeLen = population[0].length;
-
-        double[] avg = new double[generations];
-        double[] best = new double[generations];
-        double[] worst = new double[generations];
-        int[][] bestPerGen = new int[generations][genomeLen];
-
-        double lastBest = -1;
-        int stagnation = 0;
-
-        for (int gen = 0; gen < generations; gen++) {
-
-            // evaluate current population
-            double[] fitness = new double[popSize];
-            for (int i = 0; i < popSize; i++)
-                fitness[i] = evaluateWorld(population[i]);
-
-            double min = Double.POSITIVE_INFINITY;
-            double max = Double.NEGATIVE_INFINITY;
-            double sum = 0;
-            int count = fitness.length;
-
-            if (count == 0) {
-                min = 0;
-                max = 0;
-            } else {
-                for (double value : fitness) {
-                    if (value < min) {
-                        min = value;
-                    }
-                    if (value > max) {
-                        max = value;
-                    }
-                    sum += value;
-                }
-            }
+        evolveWorlds(population, generations, mutationRate, rand, new EvolutionOptions());
+    }
 
-            double avgVal = (count > 0) ? (sum / count) : 0;
+    public static int[][] evolveWorlds(int[][] population, int generations, double mutationRate, Random rand,
+            EvolutionOptions options) {
+        return evolveWorlds(population, generations, mutationRate, rand.nextLong(), 1, options);
+    }
 
-            avg[gen] = avgVal;
-            best[gen] = max;
-            worst[gen] = min;
+    // island model run, see GeneticEngine.runIslands
+    public static int[][] evolveIslands(int[][] population, int generations, double mutationRate, long seed,
+            IslandModel model, EvolutionOptions options) throws InterruptedException {
+        return engine(options.pareto()).runIslands(population, generations, mutationRate, seed, model, options);
+    }
 
-            // track stagnation
-            if (Math.abs(max - lastBest) < 0.01)
-                stagnation++;
-            else
-                stagnation = 0;
-            lastBest = max;
-
-            // dynamic mutation
-            double dynamicMutation = mutationRate * (1 + stagnation * 0.05);
-            dynamicMutation = Math.min(0.15, dynamicMutation); // Cap at 15%
-
-            // sort population by fitness (descending)
-            Integer[] idx = new Integer[popSize];
-            for (int i = 0; i < popSize; i++)
-                idx[i] = i;
-            Arrays.sort(idx, (a, b) -> Double.compare(fitness[b], fitness[a]));
-
-            // store best world for this generation
-            bestPerGen[gen] = Arrays.copyOf(population[idx[0]], genomeLen);
-
-            System.out.printf("Gen %3d | Best: %.2f | Avg: %.2f | Worst: %.2f | Mutation: %.3f%n",
-                    gen, max, avgVal, min, dynamicMutation);
-
-            // create a new population
-            int[][] newPop = new int[popSize][genomeLen];
-            int eliteCount = Math.max(2, popSize / 10);
-
-            // keep elites
-            for (int i = 0; i < eliteCount; i++)
-                newPop[i] = Arrays.copyOf(population[idx[i]], genomeLen);
-
-            // breed remaining using tournament selection
-            for (int i = eliteCount; i < popSize; i++) {
-                int p1 = tournamentSelect(fitness, 5, rand);
-                int p2;
-                do {
-                    p2 = tournamentSelect(fitness, 5, rand);
-                } while (p1 == p2);
-
-                int[] child = crossover(population[p1], population[p2], rand);
-                mutate(child, dynamicMutation, rand);
-                newPop[i] = child;
-            }
+    // ENGINE CONFIGURATION
+    // the best 10% (at least 2) are kept, the two parents differ, parents come
+    // from tournaments of 5 by default, and every generation without progress
+    // raises the mutation rate by 5% of the base rate, up to 15%
+    // with Pareto objectives it is NSGA-II: the levels are ranked by front and
+    // crowding distance, the better half survives (so parents and children
+    // compete for it), parents win binary tournaments, the rate stays fixed
+    static GeneticEngine engine(boolean pareto) {
+        if (pareto)
+            return new GeneticEngine(new Levels(true))
+                    .elitism(0.5, 2)
+                    .distinctParents(true)
+                    .adaptiveMutation(0, 0.15)
+                    .defaultSelection("tournament:2");
+        return new GeneticEngine(new Levels(false))
+                .elitism(0.1, 2)
+                .distinctParents(true)
+                .adaptiveMutation(0.05, 0.15)
+                .defaultSelection("tournament:5");
+    }
 
-            // update population for the next generation
-            population = newPop;
+    // levels as a GeneticEngine problem: the genes are cells (0 empty, 1 bush,
+    // 2 bird), the fitness is evaluateWorld
+    static final class Levels implements GeneticEngine.Problem {
 
-            // in the and also do the plotting
-            if (gen == generations - 1) {
-                plotEvolutionGraph(avg, best, worst);
-                visualizeBestWorlds(bestPerGen);
-            }
+        private final boolean pareto;
+
+        Levels(boolean pareto) {
+            this.pareto = pareto;
         }
-    }
 
-    // PLOT EVOLUTION RESULTS
-    public static void plotEvolutionGraph(double[] avg, double[] best, double[] worst) {
-        JFrame frame = new JFrame("Level Evolution Progress");
-        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        frame.setSize(800, 400);
-
-        JPanel panel = new JPanel() {
-            protected void paintComponent(Graphics g) {
-                super.paintComponent(g);
-                Graphics2D g2 = (Graphics2D) g;
-                g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-
-                int pad = 60;
-                int w = getWidth() - 2 * pad;
-                int h = getHeight() - 2 * pad;
-                int gens = avg.length;
-
-                double maxVal = Arrays.stream(best).max().getAsDouble();
-                double minVal = Arrays.stream(worst).min().getAsDouble();
-                if (maxVal == minVal)
-                    maxVal = minVal + 1;
-
-                // Draw axes
-                g2.setColor(Color.BLACK);
-                g2.drawLine(pad, pad + h, pad + w, pad + h);
-                g2.drawLine(pad, pad, pad, pad + h);
-                g2.drawString("Generations", pad + w / 2 - 30, pad + h + 40);
-
-                // Y-axis label
-                Graphics2D g2Rotated = (Graphics2D) g2.create();
-                g2Rotated.rotate(-Math.PI / 2);
-                g2Rotated.drawString("Fitness", -(pad + h / 2 + 20), 20);
-                g2Rotated.dispose();
-
-                // Y-axis tick marks and labels
-                int numYTicks = 5;
-                for (int i = 0; i <= numYTicks; i++) {
-                    double val = minVal + (maxVal - minVal) * i / numYTicks;
-                    int yPos = pad + h - (int) ((val - minVal) / (maxVal - minVal) * h);
-                    g2.drawLine(pad - 5, yPos, pad, yPos);
-                    g2.drawString(String.format("%.0f", val), pad - 45, yPos + 5);
-                }
+        @Override
+        public String name() {
+            return "LevelEvolution";
+        }
 
-                // X-axis tick marks and labels
-                int numXTicks = Math.min(10, gens - 1);
-                for (int i = 0; i <= numXTicks; i++) {
-                    int genNum = i * (gens - 1) / numXTicks;
-                    int xPos = pad + (int) (genNum * w / (double) (gens - 1));
-                    g2.drawLine(xPos, pad + h, xPos, pad + h + 5);
-                    g2.drawString(String.valueOf(genNum), xPos - 10, pad + h + 20);
-                }
+        @Override
+        public int alphabet() {
+            return 3;
+        }
 
-                plotLine(g2, avg, Color.BLUE, pad, w, pad, h, maxVal, minVal);
-                plotLine(g2, best, Color.GREEN, pad, w, pad, h, maxVal, minVal);
-                plotLine(g2, worst, Color.RED, pad, w, pad, h, maxVal, minVal);
+        @Override
+        public byte snapshotKind() {
+            return RunSnapshot.LEVELS;
+        }
 
-                g2.setColor(Color.BLACK);
-                g2.drawString("Avg (Blue)  Best (Green)  Worst (Red)", pad + 20, pad - 10);
-            }
+        // uniform crossover and mutation to a different cell, the child may
+        // differ from parent1 anywhere
+        @Override
+        public int breed(GenomeArena arena, int parent1, int parent2, int child, double mutationRate,
+                RandomGenerator rand) {
+            arena.uniformToNext(parent1, parent2, child, rand);
+            arena.mutateNext(child, mutationRate, 3, true, rand);
+            return 0;
+        }
 
-            void plotLine(Graphics2D g2, double[] data, Color color, int px, int w, int py, int h, double maxVal,
-                    double minVal) {
-                g2.setColor(color);
-                for (int i = 0; i < data.length - 1; i++) {
-                    double x1 = px + i * (w / (double) (data.length - 1));
-                    double y1 = py + h - ((data[i] - minVal) / (maxVal - minVal) * h);
-                    double x2 = px + (i + 1) * (w / (double) (data.length - 1));
-                    double y2 = py + h - ((data[i + 1] - minVal) / (maxVal - minVal) * h);
-                    g2.draw(new Line2D.Double(x1, y1, x2, y2));
-                }
-            }
-        };
+        @Override
+        public GeneticEngine.Evaluator evaluator(GenomeArena arena) {
+            return new LevelEvaluator(arena, pareto);
+        }
 
-        frame.add(panel);
-        frame.setVisible(true);
+        @Override
+        public DistributedEvaluator remote(List<InetSocketAddress> workers) throws IOException {
+            if (pareto)
+                throw new IllegalArgumentException("workers only return the weighted fitness, not its objectives");
+            return DistributedEvaluator.levels(workers);
+        }
+
+        @Override
+        public String statsHeader() {
+            return "generation,best,average,worst,mutation";
+        }
+
+        @Override
+        public String statsLine(int gen, double best, double average, double worst, double mutationRate) {
+            return String.format(Locale.ROOT, "%d,%.4f,%.4f,%.4f,%.5f", gen, best, average, worst, mutationRate);
+        }
+
+        @Override
+        public String progressLine(int gen, double best, double average, double worst, double mutationRate) {
+            return String.format("Gen %3d | Best: %.2f | Avg: %.2f | Worst: %.2f | Mutation: %.3f", gen, best,
+                    average, worst, mutationRate);
+        }
+
+        @Override
+        public String chartTitle() {
+            return "Level Evolution Progress";
+        }
+
+        @Override
+        public String chartLabel() {
+            return "Fitness";
+        }
+
+        // the progress chart is live, the best worlds are shown at the end
+        @Override
+        public void finish(double[] average, HistoryLog.Reader history) {
+            visualizeBestWorlds(history);
+        }
+    }
+
+    // PARETO FRONT
+    // the distinct levels of "population" that no other level beats in every
+    // fitness component (see LevelFitness.objectives), one CSV line each with
+    // the components, the weighted fitness and the cells
+    public static void writeFront(int[][] population, PrintStream out) {
+        int m = LevelFitness.OBJECTIVES;
+        double[] objectives = new double[population.length * m];
+        for (int i = 0; i < population.length; i++)
+            new LevelFitness(population[i]).objectives(objectives, i * m);
+        int[] fronts = ParetoSort.fronts(objectives, population.length, m);
+
+        out.println("transitions,ratio_error,longest_empty,bush_and_bird,patterns,fitness,level");
+        Set<String> written = new HashSet<>();
+        for (int i = 0; i < population.length; i++) {
+            if (fronts[i] != 0)
+                continue;
+            StringBuilder cells = new StringBuilder(population[i].length);
+            for (int cell : population[i])
+                cells.append(cell);
+            if (!written.add(cells.toString()))
+                continue;
+            int o = i * m;
+            out.printf(Locale.ROOT, "%d,%.4f,%d,%d,%d,%.4f,%s%n", (int) objectives[o], objectives[o + 1],
+                    (int) objectives[o + 2], 1 - (int) objectives[o + 3], -(int) objectives[o + 4],
+                    evaluateWorld(population[i]), cells);
+        }
     }
 
     // VISUALIZE WORLD EVOLUTION
-    public static void visualizeBestWorlds(int[][] bestWorlds) {
+    // the best worlds are drawn from cached tiles (see HistoryView)
+    public static void visualizeBestWorlds(HistoryLog.Reader bestWorlds) {
         JFrame frame = new JFrame("Best Levels Over Generations");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         frame.setSize(1000, 600);
 
-        JPanel panel = new JPanel() {
-            protected void paintComponent(Graphics g) {
-                super.paintComponent(g);
-                int gens = bestWorlds.length;
-                int len = bestWorlds[0].length;
-
-                int cellW = Math.max(2, (getWidth() - 100) / len);
-                int cellH = Math.max(4, (getHeight() - 80) / gens);
-
-                for (int gen = 0; gen < gens; gen++) {
-                    for (int i = 0; i < len; i++) {
-                        int val = bestWorlds[gen][i];
-                        switch (val) {
-                            case 0 -> g.setColor(Color.WHITE);
-                            case 1 -> g.setColor(new Color(40, 200, 60));
-                            case 2 -> g.setColor(new Color(90, 90, 255));
-                        }
-                        g.fillRect(60 + i * cellW, 30 + gen * cellH, cellW, cellH);
-                    }
-                    if (gen % Math.max(1, gens / 20) == 0) {
-                        g.setColor(Color.BLACK);
-                        g.drawString("Gen " + gen, 10, 30 + gen * cellH + cellH / 2);
-                    }
-                }
+        int[] colors = { 0xFFFFFF, 0x28C83C, 0x5A5AFF };
+        HistoryView view = new HistoryView(bestWorlds, (gen, value, changed) -> colors[value]);
 
-                g.setColor(Color.BLACK);
-                g.drawString("Legend: White=Empty  Green=Bush  Blue=Bird", 60, getHeight() - 20);
-            }
-        };
+        JLabel legend = new JLabel("Legend: White=Empty  Green=Bush  Blue=Bird  (Ctrl + wheel zooms)");
+        legend.setBorder(BorderFactory.createEmptyBorder(6, 60, 6, 0));
 
-        frame.add(new JScrollPane(panel));
+        frame.add(view.inScrollPane(frame.getWidth() - 100), BorderLayout.CENTER);
+        frame.add(legend, BorderLayout.SOUTH);
         frame.setVisible(true);
     }
 
+    // BATCH MODE
+    static final String USAGE = String.join(System.lineSeparator(),
+            "usage: java LevelEvolution                (interactive)",
+            "       java LevelEvolution --key value ... (headless batch run)",
+            "  --config FILE        properties file with any of the keys below",
+            "  --world-size N       number of cells of every level",
+            "  --population N       number of levels",
+            "  --generations N      number of generations",
+            "  --seed N             seed (default 0)",
+            "  --mutation-rate R    base mutation rate (default 0.05)",
+            "  --objectives O       weighted: evolve the weighted fitness (default), pareto:",
+            "                       evolve a Pareto front of its components (NSGA-II, not",
+            "                       with --workers or --fitness-cache)",
+            "  --front FILE         CSV of the Pareto front of the last population",
+            "  --threads N          worker threads (default: all cores)",
+            "  --stats FILE         CSV statistics per generation (default - = stdout)",
+            "  --history FILE       binary log of the best world per generation",
+            "  --selection S        parent selection: truncation[:fraction], tournament[:size],",
+            "                       rank or sus (default tournament:5)",
+            "  --novelty K          also pick parents by novelty: the mean gene distance to the",
+            "                       K nearest genomes of the generation and of an archive of",
+            "                       novel ones (default 0 = off), the elites stay the fittest",
+            "  --novelty-weight W   share of novelty in the parent choice, 1 = pure novelty",
+            "                       search (default 0.5)",
+            "  --islands N          split the levels into N islands with migration",
+            "  --topology T         island neighbours: ring or full (default ring)",
+            "  --migration-interval N  generations between migrations (default 10)",
+            "  --migrants N         levels sent per migration (default 2)",
+            "  --workers H:P,...    evaluate on EvaluationWorker processes (not with --islands)",
+            "  --checkpoint FILE    snapshot of the run, rewritten every --checkpoint-interval",
+            "                       generations (default 100) and at the end",
+            "  --resume FILE        continue from a snapshot, with the same parameters",
+            "  --fitness-cache N    cache the fitness of up to N levels by genome hash",
+            "                       (default 0 = off)",
+            "  --jmx B              true: publish live metrics as a JMX MBean (default false),",
+            "                       JFR events are recorded by any flight recording",
+            "  --target-fitness F   stop once the best fitness is at least F",
+            "  --patience N         stop after N generations without a better best fitness",
+            "  --min-diversity D    stop once the share of genes that differ from the most",
+            "                       common value at their position falls below D",
+            "  --time-limit S       stop after the generation that ends S seconds in",
+            "  --max-evaluations N  stop after the generation that reaches N evaluations");
+
+    // headless run configured by command line arguments and/or a config file
+    // writes CSV statistics per generation and returns the exit status
+    static int runBatch(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        if (Arrays.asList(args).contains("--help")) {
+            System.out.println(USAGE);
+            return BatchConfig.EXIT_OK;
+        }
+        try {
+            BatchConfig config = BatchConfig.parse(args, "world-size", "population", "generations", "seed",
+                    "mutation-rate", "threads", "objectives", "front", "stats", "history", "selection", "islands",
+                    "topology", "migration-interval", "migrants", "workers", "checkpoint", "checkpoint-interval",
+                    "resume", "fitness-cache", "jmx", "target-fitness", "patience", "min-diversity", "time-limit",
+                    "max-evaluations", "novelty", "novelty-weight");
+            IslandModel islands = IslandModel.fromConfig(config);
+            if (config.has("workers") && islands != null)
+                throw new IllegalArgumentException("--workers cannot be combined with --islands");
+            if (islands != null && (config.has("checkpoint") || config.has("resume")))
+                throw new IllegalArgumentException("island runs cannot be checkpointed");
+            int size = config.getInt("world-size");
+            int pop = config.getInt("population");
+            int gens = config.getInt("generations");
+            int seed = config.getInt("seed", 0);
+            double mutationRate = config.getDouble("mutation-rate", 0.05);
+            int threads = config.getInt("threads", Runtime.getRuntime().availableProcessors());
+
+            if (size < 1 || pop < 2 || gens < 1 || threads < 1)
+                throw new IllegalArgumentException(
+                        "world size and generations must be at least 1, population at least 2, threads at least 1");
+            if (mutationRate < 0 || mutationRate > 1)
+                throw new IllegalArgumentException("mutation rate must be between 0 and 1");
+
+            int[][] population = new int[pop][size];
+            for (int i = 0; i < pop; i++)
+                population[i] = generateWorldGenome(seed + i, size);
+
+            PrintStream stats = config.openStats("stats");
+            EvolutionOptions options = new EvolutionOptions().stats(stats);
+            if (config.has("history"))
+                options.history(Path.of(config.getString("history", "")));
+            if (config.has("selection"))
+                options.selection(config.getString("selection", ""));
+            if (config.has("checkpoint"))
+                options.checkpoint(Path.of(config.getString("checkpoint", "")),
+                        config.getInt("checkpoint-interval", 100));
+            if (config.has("resume"))
+                options.resume(Path.of(config.getString("resume", "")));
+            String objectives = config.getString("objectives", "weighted");
+            if (!objectives.equals("weighted") && !objectives.equals("pareto"))
+                throw new IllegalArgumentException("objectives must be weighted or pareto: " + objectives);
+            options.pareto(objectives.equals("pareto"));
+            if (options.pareto() && (config.has("workers") || config.has("fitness-cache")))
+                throw new IllegalArgumentException("--objectives pareto cannot be combined with --workers or "
+                        + "--fitness-cache");
+            if (config.has("workers"))
+                options.workers(DistributedEvaluator.parseWorkers(config.getString("workers", "")));
+            int cacheSize = config.getInt("fitness-cache", 0);
+            if (cacheSize < 0)
+                throw new IllegalArgumentException("fitness cache size must not be negative");
+            if (cacheSize > 0)
+                options.fitnessCache(new FitnessCache(cacheSize));
+            options.metrics(config.getBoolean("jmx", false));
+            options.stopping(StoppingCriteria.fromConfig(config, Double.NaN));
+            options.novelty(config.getInt("novelty", 0), config.getDouble("novelty-weight", 0.5));
+            int[][] last;
+            if (islands != null)
+                last = evolveIslands(population, gens, mutationRate, seed, islands, options);
+            else
+                last = evolveWorlds(population, gens, mutationRate, seed, threads, options);
+            if (config.has("front")) {
+                String file = config.getString("front", "");
+                try (PrintStream front = new PrintStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+                    writeFront(last, front);
+                    if (front.checkError())
+                        throw new IOException("could not write " + file);
+                }
+            }
+            stats.flush();
+            boolean failed = stats.checkError();
+            if (stats != System.out)
+                stats.close();
+            if (failed) {
+                System.err.println("LevelEvolution: could not write statistics");
+                return BatchConfig.EXIT_FAILURE;
+            }
+            return BatchConfig.EXIT_OK;
+        } catch (IllegalArgumentException e) {
+            System.err.println("LevelEvolution: " + e.getMessage());
+            System.err.println(USAGE);
+            return BatchConfig.EXIT_USAGE;
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("LevelEvolution: " + e.getMessage());
+            return BatchConfig.EXIT_FAILURE;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("LevelEvolution: interrupted");
+            return BatchConfig.EXIT_FAILURE;
+        }
+    }
+
     // MAIN
+    // without arguments the parameters are read interactively,
+    // with arguments it is a headless batch run (see USAGE)
     public static void main(String[] args) {
+        if (args.length > 0)
+            System.exit(runBatch(args));
+
         Scanner sc = new Scanner(System.in);
         System.out.print("World size: ");
         int size = sc.nextInt();
@@ -351,14 +426,15 @@ public class LevelEvolution {
         System.out.print("Seed: ");
         int seed = sc.nextInt();
 
-        Random rand = new Random(seed);
         double mutationRate = 0.05;
 
         int[][] population = new int[pop][size];
         for (int i = 0; i < pop; i++)
             population[i] = generateWorldGenome(seed + i, size);
 
-        evolveWorlds(population, gens, mutationRate, rand);
+        // breeding and scoring run on all cores, results only depend on the seed
+        int threads = Runtime.getRuntime().availableProcessors();
+        evolveWorlds(population, gens, mutationRate, seed, threads);
 
         sc.close();
     }
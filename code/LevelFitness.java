@@ -0,0 +1,389 @@
+import java.util.Arrays;
+
+// incremental version of LevelEvolution.evaluateWorld
+// instead of scanning the level for every score, the components of the fitness
+// are kept as counts that set() updates around the changed cell:
+// - impossible transitions (bush next to bird), obstacles, bushes and birds,
+//   and [empty, obstacle, empty] patterns, each touched by at most 3 windows
+// - the longest empty run, from a segment tree whose nodes hold the empty
+//   prefix, suffix and longest run of their range
+// so set() costs O(log n) per cell and score() is O(log n), and a child
+// derived from its parent (derive) costs O(n + changes * log n), the O(n)
+// being a plain copy of the parent's arrays
+// the tree is only worth its upkeep for levels that are bred into close
+// children: a level that is scored from scratch (reset, or a child with more
+// than derivable(n) changes) gets one counting pass like evaluateWorld, and
+// its tree is built the first time a child is derived from it cell by cell
+//
+// score() rounds exactly like evaluateWorld, so both give bit-identical results
+public class LevelFitness {
+
+    static final int OBJECTIVES = 5; // see objectives
+
+    private final int length;
+    private final int leaves; // power of two >= length
+    private final int[] cells;
+    // inner nodes 1..leaves-1 of the tree (leaves are the cells themselves):
+    private final int[] prefix; // empty run at the start of a node's range
+    private final int[] suffix; // empty run at the end of a node's range
+    private final int[] longest; // longest empty run inside a node's range
+    private final int[] dirty; // scratch for derive
+    private boolean built; // whether the tree matches the cells
+    private int maxEmpty; // longest empty run while the tree is not built
+
+    private int transitions;
+    private int obstacles;
+    private int bushes;
+    private int birds;
+    private int patterns;
+
+    public LevelFitness(int[] world) {
+        this(world.length);
+        reset(world);
+    }
+
+    // a level packed as bytes at genes[offset..offset + length)
+    public LevelFitness(byte[] genes, int offset, int length) {
+        this(length);
+        reset(genes, offset);
+    }
+
+    private LevelFitness(int length) {
+        if (length < 1) {
+            throw new IllegalArgumentException("level must have at least 1 cell");
+        }
+        this.length = length;
+        int size = Integer.highestOneBit(length);
+        this.leaves = size < length ? size << 1 : size;
+        this.cells = new int[length];
+        this.prefix = new int[leaves];
+        this.suffix = new int[leaves];
+        this.longest = new int[leaves];
+        this.dirty = new int[length];
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public int get(int index) {
+        return cells[index];
+    }
+
+    // rescore a level of the same length from scratch, O(n)
+    public void reset(int[] world) {
+        if (world.length != length) {
+            throw new IllegalArgumentException("level has " + world.length + " cells instead of " + length);
+        }
+        System.arraycopy(world, 0, cells, 0, length);
+        rescore();
+    }
+
+    // the same for a level packed as bytes at genes[offset..offset + length())
+    public void reset(byte[] genes, int offset) {
+        for (int i = 0; i < length; i++) {
+            cells[i] = genes[offset + i];
+        }
+        rescore();
+    }
+
+    // count the components of the cells, the same pass as evaluateWorld
+    private void rescore() {
+        built = false;
+        int n = length;
+        int[] c = cells;
+        int t = 0, o = 0, bush = 0, bird = 0, p = 0;
+        int emptyRun = 0, maxRun = 0;
+        for (int i = 0; i < n; i++) {
+            int w = c[i];
+            int next = i + 1 < n ? c[i + 1] : 0;
+            int after = i + 2 < n ? c[i + 2] : 1;
+            int empty = is(w, 0);
+            t += (is(w, 1) & is(next, 2)) | (is(w, 2) & is(next, 1));
+            p += empty & (is(next, 0) ^ 1) & is(after, 0);
+            o += empty ^ 1;
+            bush += is(w, 1);
+            bird += is(w, 2);
+            emptyRun = (emptyRun + 1) * empty;
+            maxRun = Math.max(maxRun, emptyRun);
+        }
+        transitions = t;
+        obstacles = o;
+        bushes = bush;
+        birds = bird;
+        patterns = p;
+        maxEmpty = maxRun;
+    }
+
+    // synchronized: children of the same parent may be derived on several
+    // threads at once
+    private synchronized void build() {
+        if (!built) {
+            for (int node = leaves - 1; node >= 1; node--) {
+                pull(node);
+            }
+            built = true;
+        }
+    }
+
+    // same state as "other" (a level of the same length), O(n) copy
+    public void copyFrom(LevelFitness other) {
+        if (other.length != length) {
+            throw new IllegalArgumentException("levels differ in length");
+        }
+        System.arraycopy(other.cells, 0, cells, 0, length);
+        if (other.built) {
+            System.arraycopy(other.prefix, 0, prefix, 0, prefix.length);
+            System.arraycopy(other.suffix, 0, suffix, 0, suffix.length);
+            System.arraycopy(other.longest, 0, longest, 0, longest.length);
+        }
+        built = other.built;
+        maxEmpty = other.maxEmpty;
+        transitions = other.transitions;
+        obstacles = other.obstacles;
+        bushes = other.bushes;
+        birds = other.birds;
+        patterns = other.patterns;
+    }
+
+    // most changed cells for which a child is derived from its parent rather
+    // than rescored: derive copies the parent (4 arrays of about n ints) and
+    // then pays O(log n) per change, about 130 ns at n = 2000, where the
+    // counting pass of reset costs about 5 ns per cell, so the two break even
+    // near n / 32 changes (measured at n = 64 to 20000, changes at random
+    // cells), and at 2 or more for short levels
+    public static int derivable(int length) {
+        return Math.max(2, length / 32);
+    }
+
+    // state of the level at genes[offset..offset + length()), bred from the
+    // level of "parent" such that it may differ from it only at the "count"
+    // cells changes[from..from + count) (in any order, repeats allowed):
+    // only those cells are updated, and the tree nodes above the ones that
+    // changed are recomputed once, level by level
+    // the parent is copied first (copyFrom), which is why derivable(n)
+    // grows with n
+    public void derive(LevelFitness parent, byte[] genes, int offset, int[] changes, int from, int count) {
+        if (parent.length != length) {
+            throw new IllegalArgumentException("levels differ in length");
+        }
+        parent.build();
+        copyFrom(parent);
+        int dirtyCount = 0;
+        boolean sorted = true;
+        for (int k = from; k < from + count; k++) {
+            int i = changes[k];
+            int value = genes[offset + i];
+            // a 1-cell level has no inner node above its leaf
+            if (value != cells[i] && change(i, value) && leaves > 1) {
+                int node = (leaves + i) >> 1;
+                sorted &= dirtyCount == 0 || node >= dirty[dirtyCount - 1];
+                dirty[dirtyCount++] = node;
+            }
+        }
+        if (!sorted) {
+            Arrays.sort(dirty, 0, dirtyCount);
+        }
+
+        // pull the parents of the changed leaves, then their parents, ...
+        // dirty stays sorted, so duplicates are neighbours
+        count = dirtyCount;
+        while (count > 0) {
+            int next = 0;
+            for (int k = 0; k < count; k++) {
+                int node = dirty[k];
+                if (k > 0 && node == dirty[k - 1]) {
+                    continue;
+                }
+                pull(node);
+                if (node > 1) {
+                    dirty[next++] = node >> 1;
+                }
+            }
+            count = next;
+        }
+    }
+
+    // change one cell, O(log n)
+    public void set(int index, int value) {
+        build();
+        if (cells[index] != value && change(index, value)) {
+            for (int node = (leaves + index) >> 1; node >= 1; node >>= 1) {
+                pull(node);
+            }
+        }
+    }
+
+    // change one cell without updating the tree, returns true if the tree
+    // has to be updated (the cell became empty or stopped being empty)
+    private boolean change(int index, int value) {
+        int old = cells[index];
+
+        // remove the windows that contain the cell, change it, add them back
+        for (int i = Math.max(0, index - 1); i <= index; i++) {
+            transitions -= transition(i);
+        }
+        for (int i = Math.max(0, index - 2); i <= index; i++) {
+            patterns -= pattern(i);
+        }
+        count(old, -1);
+
+        cells[index] = value;
+
+        for (int i = Math.max(0, index - 1); i <= index; i++) {
+            transitions += transition(i);
+        }
+        for (int i = Math.max(0, index - 2); i <= index; i++) {
+            patterns += pattern(i);
+        }
+        count(value, 1);
+
+        return (old == 0) != (value == 0);
+    }
+
+    public int longestEmptyRun() {
+        if (!built) {
+            return maxEmpty;
+        }
+        return leaves == 1 ? emptyLeaf(0) : longest[1];
+    }
+
+    public double score() {
+        return score(length, transitions, obstacles, longestEmptyRun(), bushes > 0 && birds > 0, patterns);
+    }
+
+    // the components of score() as objectives to minimize, for Pareto
+    // ranking (see ParetoSort): impossible transitions, distance of the
+    // obstacle ratio from 0.3, longest empty run, 1 unless there are bushes
+    // and birds, and minus the patterns, into out[offset..offset + OBJECTIVES)
+    public void objectives(double[] out, int offset) {
+        out[offset] = transitions;
+        out[offset + 1] = Math.abs(0.3 - (double) obstacles / length);
+        out[offset + 2] = longestEmptyRun();
+        out[offset + 3] = bushes > 0 && birds > 0 ? 0 : 1;
+        out[offset + 4] = -patterns;
+    }
+
+    // the fitness from its components, with every addition and subtraction
+    // in the order (and so with the rounding) of evaluateWorld
+    static double score(int length, int transitions, int obstacles, int maxEmpty, boolean bushAndBird,
+            int patterns) {
+        // 40 per transition and the start of 100 are small integers, exact
+        double score = 100.0 - 40.0 * transitions;
+
+        double ratio = (double) obstacles / length;
+        double ideal = 0.3;
+        double diff = Math.abs(ideal - ratio);
+        score -= diff * 100;
+
+        score -= maxEmpty * 3;
+
+        if (bushAndBird) {
+            score += 20;
+        }
+
+        return addRepeated(score, 5, patterns);
+    }
+
+    // value + step added "count" times, rounded after every addition like
+    // "for (...) value += step" (step > 0, a small integer)
+    // adding an integer to a double below 2^52 is exact unless the magnitude
+    // grows into the next power of two, so the additions are done in runs
+    // that stay inside one binade and only the crossings are done one by one
+    static double addRepeated(double value, int step, int count) {
+        while (count > 0) {
+            if (Math.abs(value) >= 0x1p52) {
+                value += step;
+                count--;
+                continue;
+            }
+
+            long run;
+            if (value < 0) {
+                // up to 0 the magnitude only shrinks
+                run = Math.min(count, (long) (-value / step));
+                while (run > 0 && value + (double) run * step > 0) {
+                    run--;
+                }
+            } else if (value > 0) {
+                // below the next power of two the ulp stays the same
+                double limit = Math.scalb(1.0, Math.getExponent(value) + 1);
+                run = Math.min(count, (long) ((limit - value) / step));
+                while (run > 0 && value + (double) run * step >= limit) {
+                    run--;
+                }
+            } else {
+                run = 0;
+            }
+
+            if (run > 0) {
+                value += (double) run * step;
+                count -= run;
+            } else {
+                value += step;
+                count--;
+            }
+        }
+        return value;
+    }
+
+    // 1 if a == b, else 0, without a branch
+    static int is(int a, int b) {
+        int d = a ^ b;
+        return ((d | -d) >>> 31) ^ 1;
+    }
+
+    // 1 if cells i and i + 1 are a bush next to a bird
+    private int transition(int i) {
+        if (i + 1 >= length) {
+            return 0;
+        }
+        int a = cells[i];
+        int b = cells[i + 1];
+        return (a == 1 && b == 2) || (a == 2 && b == 1) ? 1 : 0;
+    }
+
+    // 1 if cells i..i + 2 are empty, obstacle, empty
+    private int pattern(int i) {
+        if (i + 2 >= length) {
+            return 0;
+        }
+        return cells[i] == 0 && cells[i + 1] != 0 && cells[i + 2] == 0 ? 1 : 0;
+    }
+
+    private void count(int cell, int delta) {
+        if (cell != 0) {
+            obstacles += delta;
+        }
+        if (cell == 1) {
+            bushes += delta;
+        } else if (cell == 2) {
+            birds += delta;
+        }
+    }
+
+    // 1 if leaf i is an empty cell, the leaves past the end count as
+    // obstacles, they end the last run
+    private int emptyLeaf(int i) {
+        return i < length && cells[i] == 0 ? 1 : 0;
+    }
+
+    // combine the children of an inner node
+    private void pull(int node) {
+        int left = 2 * node;
+        int right = left + 1;
+        if (left >= leaves) {
+            int l = emptyLeaf(left - leaves);
+            int r = emptyLeaf(right - leaves);
+            prefix[node] = l * (1 + r);
+            suffix[node] = r * (1 + l);
+            longest[node] = l + r;
+            return;
+        }
+        // cells per child: leaves >> (depth of the node + 1)
+        int half = leaves >> (32 - Integer.numberOfLeadingZeros(node));
+        prefix[node] = prefix[left] == half ? half + prefix[right] : prefix[left];
+        suffix[node] = suffix[right] == half ? half + suffix[left] : suffix[right];
+        longest[node] = Math.max(Math.max(longest[left], longest[right]), suffix[left] + prefix[right]);
+    }
+}
@@ -0,0 +1,180 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import javax.swing.*;
+
+// live chart of the best, average and worst fitness of a running evolution
+// the engine publishes into a StatsRing and never touches Swing; the chart
+// polls the ring with a Swing timer at FPS frames per second and only draws
+// the segments that arrived since the last frame into a backing image
+// the y range is kept from running minimum and maximum, when a value falls
+// outside of it the range grows with some headroom and the image is redrawn
+// once from the stored series, the x axis spans the generations of the run
+public class LiveChart extends JComponent {
+
+    private static final long serialVersionUID = 1L;
+    static final int FPS = 30;
+    private static final int PADDING = 70;
+    private static final Color[] COLORS = { new Color(0, 170, 0), Color.BLUE, Color.RED }; // best, average, worst
+    private static final String[] NAMES = { "Best", "Average", "Worst" };
+
+    private final StatsRing ring;
+    private final int generations;
+    private final String yLabel;
+
+    // the series so far, values[series][k] belongs to generation gens[k]
+    private int[] gens = new int[256];
+    private double[][] values = new double[3][256];
+    private int count;
+    private double low = Double.POSITIVE_INFINITY; // range of the y axis
+    private double high = Double.NEGATIVE_INFINITY;
+
+    private BufferedImage plot; // the lines, the size of the plot area
+    private int drawn; // entries already drawn into plot
+
+    public LiveChart(StatsRing ring, int generations, String yLabel) {
+        this.ring = ring;
+        this.generations = Math.max(2, generations);
+        this.yLabel = yLabel;
+        setOpaque(true);
+        setBackground(Color.WHITE);
+        setPreferredSize(new Dimension(800, 400));
+        new Timer(1000 / FPS, e -> poll()).start();
+    }
+
+    // a window with a live chart of a run of "generations", the returned ring
+    // is for the engine to publish into
+    public static StatsRing open(String title, int generations, String yLabel) {
+        StatsRing ring = new StatsRing(1 << 14);
+        SwingUtilities.invokeLater(() -> {
+            JFrame frame = new JFrame(title);
+            frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+            frame.add(new LiveChart(ring, generations, yLabel));
+            frame.pack();
+            frame.setLocationRelativeTo(null);
+            frame.setVisible(true);
+        });
+        return ring;
+    }
+
+    // one frame: take what arrived, draw only that
+    private void poll() {
+        int before = count;
+        ring.drain(this::append);
+        if (count == before) {
+            return;
+        }
+
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int k = before; k < count; k++) {
+            for (double[] series : values) {
+                min = Math.min(min, series[k]);
+                max = Math.max(max, series[k]);
+            }
+        }
+        if (min < low || max > high) {
+            // grow past the new values, so this stays rare
+            double lo = Math.min(low, min);
+            double hi = Math.max(high, max);
+            double margin = Math.max(1, (hi - lo) * 0.25);
+            // (not below 0 for fitness that cannot be negative)
+            low = min < low ? (lo >= 0 ? Math.max(0, lo - margin) : lo - margin) : low;
+            high = max > high ? hi + margin : high;
+            drawn = 0; // the scale changed, redraw all
+        }
+        repaint();
+    }
+
+    private void append(int gen, double best, double average, double worst) {
+        if (count == gens.length) {
+            gens = Arrays.copyOf(gens, count * 2);
+            for (int s = 0; s < values.length; s++) {
+                values[s] = Arrays.copyOf(values[s], count * 2);
+            }
+        }
+        gens[count] = gen;
+        values[0][count] = best;
+        values[1][count] = average;
+        values[2][count] = worst;
+        count++;
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Graphics2D g2 = (Graphics2D) g;
+        g2.setColor(getBackground());
+        g2.fillRect(0, 0, getWidth(), getHeight());
+        int w = Math.max(1, getWidth() - 2 * PADDING);
+        int h = Math.max(1, getHeight() - 2 * PADDING);
+
+        if (plot == null || plot.getWidth() != w || plot.getHeight() != h) {
+            plot = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+            drawn = 0;
+        }
+        updatePlot(w, h);
+        g2.drawImage(plot, PADDING, PADDING, null);
+
+        // axes, ticks and legend, a constant amount of work
+        g2.setColor(Color.BLACK);
+        g2.drawLine(PADDING, PADDING + h, PADDING + w, PADDING + h);
+        g2.drawLine(PADDING, PADDING, PADDING, PADDING + h);
+        g2.drawString("Generation", PADDING + w / 2 - 30, PADDING + h + 40);
+        Graphics2D rotated = (Graphics2D) g2.create();
+        rotated.rotate(-Math.PI / 2);
+        rotated.drawString(yLabel, -(PADDING + h / 2 + 40), 20);
+        rotated.dispose();
+
+        for (int i = 0; i <= 10; i++) {
+            int gen = (int) ((long) (generations - 1) * i / 10);
+            int x = PADDING + x(gen, w);
+            g2.drawLine(x, PADDING + h - 5, x, PADDING + h + 5);
+            g2.drawString(Integer.toString(gen), x - 10, PADDING + h + 20);
+        }
+        if (count > 0) {
+            for (int i = 0; i <= 5; i++) {
+                double value = low + (high - low) * i / 5;
+                int y = PADDING + y(value, h);
+                g2.drawLine(PADDING - 5, y, PADDING + 5, y);
+                g2.drawString(String.format("%.0f", value), PADDING - 50, y + 5);
+            }
+            g2.drawString("Generation " + (gens[count - 1] + 1) + " of " + generations + ", best "
+                    + String.format("%.2f", values[0][count - 1]), PADDING + 340, PADDING - 10);
+        }
+        for (int s = 0; s < NAMES.length; s++) {
+            g2.setColor(COLORS[s]);
+            g2.drawString(NAMES[s], PADDING + 10 + 100 * s, PADDING - 10);
+        }
+    }
+
+    // draw the entries that are not in the plot image yet
+    private void updatePlot(int w, int h) {
+        if (drawn == count) {
+            return;
+        }
+        Graphics2D g = plot.createGraphics();
+        if (drawn == 0) {
+            g.setComposite(AlphaComposite.Clear);
+            g.fillRect(0, 0, w, h);
+            g.setComposite(AlphaComposite.SrcOver);
+        }
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        for (int s = 0; s < values.length; s++) {
+            g.setColor(COLORS[s]);
+            double[] series = values[s];
+            for (int k = Math.max(1, drawn); k < count; k++) {
+                g.drawLine(x(gens[k - 1], w), y(series[k - 1], h), x(gens[k], w), y(series[k], h));
+            }
+        }
+        g.dispose();
+        drawn = count;
+    }
+
+    private int x(int gen, int w) {
+        return (int) ((long) gen * (w - 1) / (generations - 1));
+    }
+
+    private int y(double value, int h) {
+        return (int) Math.round((high - value) / (high - low) * (h - 1));
+    }
+}
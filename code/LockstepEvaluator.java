@@ -0,0 +1,180 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ForkJoinPool;
+
+// evaluates many agents on one world at once, with the same result as
+// AgentEvolution.evaluation for every agent
+// with the Vector API (java --add-modules jdk.incubator.vector, JDK 17 or
+// later) the agents run in batches of one vector, one lane per agent (see
+// VectorLanes, which is compiled from vector/ and looked up by name);
+// without the module, on an older JDK, without VectorLanes on the class path
+// or with -Devolution.vector=false they are evaluated one by one, so neither
+// is ever needed
+// as a GeneticEngine.Evaluator (AgentEvolution --lockstep) every child is
+// simulated from the start in lanes, where CheckpointEvaluator, the default,
+// resumes it from the checkpoints of its parent with table lookups; that is
+// usually faster, lanes that would have to be refilled at every checkpoint
+// are not
+public final class LockstepEvaluator implements GeneticEngine.Evaluator {
+
+    // the first JDK whose jdk.incubator.vector has what VectorLanes uses
+    private static final int MIN_FEATURE = 17;
+
+    private static final int LANES = vectorLanes();
+    private static final MethodHandle VECTOR_EVALUATE = LANES > 1
+            ? vector("evaluate", MethodType.methodType(void.class, int[].class, int[][].class, int[].class, int.class,
+                    int[].class))
+            : null;
+    private static final MethodHandle VECTOR_EVALUATE_GENES = LANES > 1
+            ? vector("evaluate", MethodType.methodType(void.class, int[].class, byte[].class, int.class, int[].class,
+                    int.class, int.class, int[].class))
+            : null;
+
+    private final int[] world;
+    private final GenomeArena arena;
+    private final int[] all; // 0..size-1
+    private final int[] scores;
+
+    public LockstepEvaluator(int[] world, GenomeArena arena) {
+        this.world = world;
+        this.arena = arena;
+        this.all = new int[arena.size()];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = i;
+        }
+        this.scores = new int[arena.size()];
+    }
+
+    // whether the batches run on the Vector API
+    public static boolean vectorized() {
+        return VECTOR_EVALUATE != null && VECTOR_EVALUATE_GENES != null;
+    }
+
+    // agents evaluated together, 1 without the Vector API
+    public static int lanes() {
+        return vectorized() ? LANES : 1;
+    }
+
+    // fitness of every agent
+    public static int[] evaluate(int[] world, int[][] agents) {
+        int[] indices = new int[agents.length];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = i;
+        }
+        int[] fitness = new int[agents.length];
+        evaluate(world, agents, indices, agents.length, fitness);
+        return fitness;
+    }
+
+    // fitness[indices[k]] of agents[indices[k]] for k < count, the others are
+    // left alone
+    public static void evaluate(int[] world, int[][] agents, int[] indices, int count, int[] fitness) {
+        if (vectorized() && count > 1) {
+            try {
+                VECTOR_EVALUATE.invokeExact(world, agents, indices, count, fitness);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+            return;
+        }
+        for (int k = 0; k < count; k++) {
+            fitness[indices[k]] = AgentEvolution.evaluation(world, agents[indices[k]]);
+        }
+    }
+
+    @Override
+    public void evaluateAll(ForkJoinPool pool, double[] fitness) {
+        evaluate(pool, arena.current(), all, all.length, fitness);
+    }
+
+    // the engine keeps the fitness of an elite, there is nothing else to keep
+    @Override
+    public void keep(int from, int to) {
+    }
+
+    // every slot from the start, the cutoff is not used
+    @Override
+    public void evaluate(ForkJoinPool pool, int[] slots, int count, int[] parents, int[] firstChanged,
+            double cutoff, double[] fitness) {
+        evaluate(pool, arena.next(), slots, count, fitness);
+    }
+
+    @Override
+    public void skip(int slot) {
+    }
+
+    @Override
+    public void swap() {
+    }
+
+    // slots[0..count) of the generation "genes", in one run of whole batches
+    // per thread of the pool
+    private void evaluate(ForkJoinPool pool, byte[] genes, int[] slots, int count, double[] fitness) {
+        int parts = pool != null ? pool.getParallelism() : 1;
+        int lanes = lanes();
+        int part = (count + parts - 1) / parts;
+        int chunk = Math.max(lanes, (part + lanes - 1) / lanes * lanes);
+        AgentEvolution.parallelFor(pool, 0, (count + chunk - 1) / chunk, p -> {
+            int from = p * chunk;
+            int to = Math.min(count, from + chunk);
+            evaluate(genes, slots, from, to);
+            for (int k = from; k < to; k++) {
+                fitness[slots[k]] = scores[slots[k]];
+            }
+        });
+    }
+
+    // scores[slots[k]] for from <= k < to
+    private void evaluate(byte[] genes, int[] slots, int from, int to) {
+        int genomeLength = arena.genomeLength();
+        if (vectorized() && to - from > 1) {
+            try {
+                VECTOR_EVALUATE_GENES.invokeExact(world, genes, genomeLength, slots, from, to, scores);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+            return;
+        }
+        for (int k = from; k < to; k++) {
+            scores[slots[k]] = AgentEvolution.evaluation(world, genes, slots[k] * genomeLength, genomeLength);
+        }
+    }
+
+    // agents per vector if the JDK is recent enough, has the module and
+    // VectorLanes is on the class path, 1 otherwise (VectorLanes must not be loaded without the
+    // module)
+    private static int vectorLanes() {
+        if (!Boolean.parseBoolean(System.getProperty("evolution.vector", "true"))) {
+            return 1;
+        }
+        if (Runtime.version().feature() < MIN_FEATURE) {
+            return 1;
+        }
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return 1;
+        }
+        MethodHandle lanes = vector("lanes", MethodType.methodType(int.class));
+        if (lanes == null) {
+            return 1;
+        }
+        try {
+            return (int) lanes.invokeExact();
+        } catch (Throwable e) {
+            return 1;
+        }
+    }
+
+    // static method of VectorLanes, null if it cannot be loaded
+    private static MethodHandle vector(String name, MethodType type) {
+        try {
+            return MethodHandles.lookup().findStatic(Class.forName("VectorLanes"), name, type);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+import java.nio.LongBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+// novelty search for GeneticEngine: every genome of a generation is scored
+// by its mean distance to its k nearest neighbours among the generation and
+// an archive of genomes that were novel in earlier generations, the most
+// novel ones of every generation join the archive (the oldest are replaced
+// once it holds as many genomes as a generation)
+// the distance is the number of genes in which two genomes differ; genomes
+// are packed into bit planes (bit j of every gene in one plane, 64 genes per
+// long), so the genes that differ in a word are the OR of the XORs of its
+// planes and one Long.bitCount counts them
+// the neighbours come from a vantage point tree over the generation and the
+// archive, rebuilt every generation: every node splits its range at the
+// median distance to its vantage point, and a search skips a side once the
+// triangle inequality shows it cannot hold anything closer than the k-th
+// neighbour found so far, instead of comparing every pair of genomes
+public final class NoveltyArchive {
+
+    private final int neighbours;
+    private final int size;
+    private final int length;
+    private final int planes; // bits per gene
+    private final int words; // longs per plane
+    private final int stride; // longs per genome
+    private final long[] points; // the generation (0..size-1), then the archive
+    private final int perGeneration; // genomes archived per generation
+    private int archived;
+    private int nextSlot; // archive slot replaced next
+
+    // vantage point tree: the node of range [from, to) has its vantage point
+    // at items[from], the points within threshold[from] of it in
+    // [from + 1, middle), the others in [middle, to)
+    private final int[] items;
+    private final int[] threshold;
+    private final int[] distance; // scratch for build
+    private final int[] order; // scratch for the archive choice
+
+    public NoveltyArchive(int neighbours, int size, int length, int alphabet) {
+        if (neighbours < 1) {
+            throw new IllegalArgumentException("novelty needs at least 1 neighbour");
+        }
+        this.neighbours = neighbours;
+        this.size = size;
+        this.length = length;
+        this.planes = Math.max(1, 32 - Integer.numberOfLeadingZeros(alphabet - 1));
+        this.words = (length + 63) >>> 6;
+        this.stride = planes * words;
+        this.points = new long[2 * size * stride];
+        this.perGeneration = Math.max(1, size / 100);
+        this.items = new int[2 * size];
+        this.threshold = new int[2 * size];
+        this.distance = new int[2 * size];
+        this.order = new int[size];
+    }
+
+    // genomes in the archive
+    public int archived() {
+        return archived;
+    }
+
+    // archive slot replaced next
+    public int nextSlot() {
+        return nextSlot;
+    }
+
+    // longs per packed genome
+    public int stride() {
+        return stride;
+    }
+
+    // the packed genomes of the archive, archived() x stride() longs
+    public void archive(LongBuffer out) {
+        out.put(points, size * stride, archived * stride);
+    }
+
+    // continue an archive written by archive (see RunSnapshot)
+    public void restore(int archived, int nextSlot, long[] archive) {
+        if (archived < 0 || archived > size || nextSlot < 0 || nextSlot >= size
+                || archive.length != archived * stride) {
+            throw new IllegalArgumentException("the snapshot holds a novelty archive of other genomes");
+        }
+        System.arraycopy(archive, 0, points, size * stride, archive.length);
+        this.archived = archived;
+        this.nextSlot = nextSlot;
+    }
+
+    // novelty of every genome of the current generation of "arena"
+    public void score(ForkJoinPool pool, GenomeArena arena, double[] novelty) {
+        byte[] genes = arena.current();
+        AgentEvolution.parallelFor(pool, 0, size, i -> pack(genes, arena.offset(i), i));
+
+        int count = size + archived;
+        for (int i = 0; i < count; i++) {
+            items[i] = i;
+        }
+        build(0, count);
+
+        int k = Math.min(neighbours, count - 1);
+        AgentEvolution.parallelFor(pool, 0, size, i -> novelty[i] = k > 0 ? nearest(i, k, count) : 0);
+
+        // the most novel join the archive
+        int add = Math.min(perGeneration, size);
+        Selection.identity(order, size);
+        Selection.selectTop(novelty, order, size, add);
+        for (int j = 0; j < add; j++) {
+            int slot = size + nextSlot;
+            System.arraycopy(points, order[j] * stride, points, slot * stride, stride);
+            nextSlot = (nextSlot + 1) % size;
+            archived = Math.min(size, archived + 1);
+        }
+    }
+
+    // (1 - weight) * fitness + weight * novelty, both scaled to [0, 1] over
+    // the generation, into out
+    public static void blend(double[] fitness, double[] novelty, double weight, double[] out) {
+        double fitnessMin = Double.POSITIVE_INFINITY;
+        double fitnessMax = Double.NEGATIVE_INFINITY;
+        double noveltyMin = Double.POSITIVE_INFINITY;
+        double noveltyMax = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < fitness.length; i++) {
+            fitnessMin = Math.min(fitnessMin, fitness[i]);
+            fitnessMax = Math.max(fitnessMax, fitness[i]);
+            noveltyMin = Math.min(noveltyMin, novelty[i]);
+            noveltyMax = Math.max(noveltyMax, novelty[i]);
+        }
+        double fitnessRange = fitnessMax > fitnessMin ? fitnessMax - fitnessMin : 1;
+        double noveltyRange = noveltyMax > noveltyMin ? noveltyMax - noveltyMin : 1;
+        for (int i = 0; i < fitness.length; i++) {
+            out[i] = (1 - weight) * (fitness[i] - fitnessMin) / fitnessRange
+                    + weight * (novelty[i] - noveltyMin) / noveltyRange;
+        }
+    }
+
+    // genome at genes[offset..offset + length) into point "index"
+    private void pack(byte[] genes, int offset, int index) {
+        int base = index * stride;
+        for (int w = 0; w < words; w++) {
+            int from = w << 6;
+            int to = Math.min(length, from + 64);
+            for (int p = 0; p < planes; p++) {
+                long bits = 0;
+                for (int j = from; j < to; j++) {
+                    bits |= (long) ((genes[offset + j] >>> p) & 1) << (j - from);
+                }
+                points[base + w * planes + p] = bits;
+            }
+        }
+    }
+
+    // genes in which points a and b differ
+    int distance(int a, int b) {
+        int baseA = a * stride;
+        int baseB = b * stride;
+        int count = 0;
+        for (int w = 0; w < stride; w += planes) {
+            long differ = 0;
+            for (int p = 0; p < planes; p++) {
+                differ |= points[baseA + w + p] ^ points[baseB + w + p];
+            }
+            count += Long.bitCount(differ);
+        }
+        return count;
+    }
+
+    private void build(int from, int to) {
+        while (to - from > 1) {
+            // the middle item as vantage point, the items are in no particular order
+            int pick = (from + to) >>> 1;
+            int vantage = items[pick];
+            items[pick] = items[from];
+            items[from] = vantage;
+            for (int j = from + 1; j < to; j++) {
+                distance[j] = distance(vantage, items[j]);
+            }
+            int middle = (from + 1 + to) >>> 1;
+            select(from + 1, to, middle);
+            threshold[from] = distance[middle];
+            build(from + 1, middle);
+            from = middle;
+        }
+    }
+
+    // rearrange items[from..to) (with their distances) so that the one at
+    // "target" is the one a sort by distance would put there, nearer ones
+    // before it and farther ones after it (quickselect)
+    private void select(int from, int to, int target) {
+        int lo = from;
+        int hi = to - 1;
+        while (lo < hi) {
+            int pivot = distance[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (distance[i] < pivot) {
+                    i++;
+                }
+                while (distance[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (target <= j) {
+                hi = j;
+            } else if (target >= i) {
+                lo = i;
+            } else {
+                break;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        int item = items[i];
+        items[i] = items[j];
+        items[j] = item;
+        int d = distance[i];
+        distance[i] = distance[j];
+        distance[j] = d;
+    }
+
+    // mean distance of point "query" to its k nearest other points
+    private double nearest(int query, int k, int count) {
+        // max-heap of the k nearest so far, by distance
+        int[] heap = new int[k];
+        int[] found = { 0 };
+        search(query, 0, count, heap, found, k);
+        long sum = 0;
+        for (int j = 0; j < found[0]; j++) {
+            sum += heap[j];
+        }
+        return (double) sum / found[0];
+    }
+
+    private void search(int query, int from, int to, int[] heap, int[] found, int k) {
+        while (from < to) {
+            int vantage = items[from];
+            int d = distance(query, vantage);
+            if (vantage != query) {
+                offer(heap, found, k, d);
+            }
+            if (to - from == 1) {
+                return;
+            }
+            int middle = (from + 1 + to) >>> 1;
+            int mu = threshold[from];
+            // the inner points are within mu of the vantage point, the outer
+            // ones at least mu away, search the side of the query first
+            if (d < mu) {
+                search(query, from + 1, middle, heap, found, k);
+                if (found[0] == k && mu - d > heap[0]) {
+                    return;
+                }
+                from = middle;
+            } else {
+                search(query, middle, to, heap, found, k);
+                if (found[0] == k && d - mu > heap[0]) {
+                    return;
+                }
+                to = middle;
+                from = from + 1;
+            }
+        }
+    }
+
+    // add distance d to the heap of the k nearest if it is nearer than the
+    // farthest of them
+    private static void offer(int[] heap, int[] found, int k, int d) {
+        int n = found[0];
+        if (n < k) {
+            int i = n;
+            heap[i] = d;
+            while (i > 0 && heap[(i - 1) >> 1] < heap[i]) {
+                int parent = (i - 1) >> 1;
+                int tmp = heap[parent];
+                heap[parent] = heap[i];
+                heap[i] = tmp;
+                i = parent;
+            }
+            found[0] = n + 1;
+        } else if (d < heap[0]) {
+            heap[0] = d;
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= k) {
+                    break;
+                }
+                if (child + 1 < k && heap[child + 1] > heap[child]) {
+                    child++;
+                }
+                if (heap[child] <= heap[i]) {
+                    break;
+                }
+                int tmp = heap[child];
+                heap[child] = heap[i];
+                heap[i] = tmp;
+                i = child;
+            }
+        }
+    }
+}
@@ -0,0 +1,372 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// runs AgentEvolution or LevelEvolution over a grid of parameters in one
+// JVM: every combination of population size, mutation rate, elite fraction,
+// tournament size and seed (or a random sample of them) is one headless run,
+// and each run becomes one line of a single CSV
+// the runs are the tasks of a work-stealing ForkJoinPool, each one on a
+// single thread, the largest populations are handed out first so the small
+// runs fill the gaps at the end
+// what only depends on the program parameters is built once and only read by
+// the runs: the compiled world (or batch of worlds) of the agents and, per
+// seed, the first population of the largest size, of which a smaller one is
+// a prefix like in a single run
+// a line of the CSV equals what the program prints for the same parameters
+// with --selection tournament:K and the elite fraction, and the lines come in
+// grid order whatever order the runs finish in
+public class ParameterSweep {
+
+    // one combination of the grid
+    static final class Point {
+        final int index; // position in the grid
+        final int population;
+        final double mutationRate;
+        final double elitism;
+        final int tournament; // 0: the selection of the program
+        final int seed;
+
+        Point(int index, int population, double mutationRate, double elitism, int tournament, int seed) {
+            this.index = index;
+            this.population = population;
+            this.mutationRate = mutationRate;
+            this.elitism = elitism;
+            this.tournament = tournament;
+            this.seed = seed;
+        }
+    }
+
+    // the lists to combine, the first one varies slowest
+    static final class Grid {
+        final int[] populations;
+        final double[] mutationRates;
+        final double[] elitism;
+        final int[] tournaments;
+        final int[] seeds;
+
+        Grid(int[] populations, double[] mutationRates, double[] elitism, int[] tournaments, int[] seeds) {
+            this.populations = populations;
+            this.mutationRates = mutationRates;
+            this.elitism = elitism;
+            this.tournaments = tournaments;
+            this.seeds = seeds;
+        }
+
+        long size() {
+            return (long) populations.length * mutationRates.length * elitism.length * tournaments.length
+                    * seeds.length;
+        }
+
+        Point point(long index) {
+            long rest = index;
+            int seed = seeds[(int) (rest % seeds.length)];
+            rest /= seeds.length;
+            int tournament = tournaments[(int) (rest % tournaments.length)];
+            rest /= tournaments.length;
+            double elite = elitism[(int) (rest % elitism.length)];
+            rest /= elitism.length;
+            double rate = mutationRates[(int) (rest % mutationRates.length)];
+            rest /= mutationRates.length;
+            return new Point((int) index, populations[(int) rest], rate, elite, tournament, seed);
+        }
+
+        // all points, or "samples" distinct ones drawn with "sampleSeed"
+        // (Floyd's algorithm), in grid order
+        List<Point> points(int samples, long sampleSeed) {
+            long total = size();
+            if (samples == 0 && total > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("the grid has " + total + " points, sample at most "
+                        + Integer.MAX_VALUE);
+            }
+            List<Point> points = new ArrayList<>();
+            if (samples == 0 || samples >= total) {
+                for (long i = 0; i < total; i++) {
+                    points.add(point(i));
+                }
+                return points;
+            }
+            SplittableRandom rand = new SplittableRandom(sampleSeed);
+            TreeSet<Long> chosen = new TreeSet<>();
+            for (long j = total - samples; j < total; j++) {
+                long pick = rand.nextLong(j + 1);
+                chosen.add(chosen.contains(pick) ? j : pick);
+            }
+            int k = 0;
+            for (long i : chosen) {
+                Point p = point(i);
+                points.add(new Point(k++, p.population, p.mutationRate, p.elitism, p.tournament, p.seed));
+            }
+            return points;
+        }
+    }
+
+    // writes the lines of the runs in grid order, each as soon as the runs
+    // before it are done
+    static final class Results {
+        private final PrintStream out;
+        private final String[] lines;
+        private int written;
+
+        Results(PrintStream out, int count) {
+            this.out = out;
+            this.lines = new String[count];
+        }
+
+        synchronized void done(int index, String line) {
+            lines[index] = line;
+            while (written < lines.length && lines[written] != null) {
+                out.println(lines[written]);
+                lines[written++] = null;
+            }
+            out.flush();
+        }
+    }
+
+    static final String HEADER = "population,mutation_rate,elitism,tournament,seed,best,average,worst,"
+            + "best_generation,millis";
+
+    private final boolean agents;
+    private final int worldSize;
+    private final int generations;
+    private final AgentEvolution.Agents problem; // null for levels
+    private final Map<Integer, int[][]> firstPopulations = new ConcurrentHashMap<>();
+    private final int largestPopulation;
+
+    // "world" (and "worlds", if not null) for agents, null for levels
+    ParameterSweep(int[] world, WorldBatch worlds, int worldSize, int generations, int largestPopulation) {
+        this.agents = world != null;
+        this.worldSize = worldSize;
+        this.generations = generations;
+        this.problem = agents ? new AgentEvolution.Agents(world, worlds, false) : null;
+        this.largestPopulation = largestPopulation;
+    }
+
+    // runs every point on "threads" cores, one line per point into "results"
+    // the runs are submitted from outside the pool, largest first, and the
+    // workers take submissions in the order they came (forking them from a
+    // task instead would let idle workers steal the last forked, the smallest)
+    void run(List<Point> points, int threads, Results results) {
+        List<Point> largestFirst = new ArrayList<>(points);
+        largestFirst.sort(Comparator.comparingInt((Point p) -> p.population).reversed());
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (Point point : largestFirst) {
+                tasks.add(pool.submit(() -> results.done(point.index, run(point))));
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // the CSV line of one run
+    String run(Point point) {
+        int[][] first = firstPopulations.computeIfAbsent(point.seed, this::firstPopulation);
+        int[][] population = Arrays.copyOf(first, point.population);
+
+        StatsRing progress = new StatsRing(Math.min(generations, 1 << 24));
+        EvolutionOptions options = new EvolutionOptions()
+                .stats(new PrintStream(OutputStream.nullOutputStream()))
+                .progress(progress);
+        if (point.tournament > 0) {
+            options.selection("tournament:" + point.tournament);
+        }
+        GeneticEngine engine = agents ? AgentEvolution.engine(problem) : LevelEvolution.engine(false);
+        engine.elitism(point.elitism);
+
+        long start = System.nanoTime();
+        engine.run(population, generations, point.mutationRate, point.seed, 1, options);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        // the last generation, and the first one that reached the best fitness
+        double[] last = new double[3];
+        double[] top = { Double.NEGATIVE_INFINITY, -1 };
+        progress.drain((gen, best, average, worst) -> {
+            last[0] = best;
+            last[1] = average;
+            last[2] = worst;
+            if (best > top[0]) {
+                top[0] = best;
+                top[1] = gen;
+            }
+        });
+        return String.format(Locale.ROOT, "%d,%s,%s,%d,%d,%.4f,%.4f,%.4f,%d,%d", point.population,
+                point.mutationRate, point.elitism, point.tournament, point.seed, last[0], last[1], last[2],
+                (int) top[1], millis);
+    }
+
+    // the first population of the largest size for a seed, as the programs
+    // generate it
+    private int[][] firstPopulation(int seed) {
+        int[][] population = new int[largestPopulation][];
+        for (int i = 0; i < largestPopulation; i++) {
+            population[i] = agents ? AgentEvolution.firstAgentGenerate(seed + i, worldSize * 10)
+                    : LevelEvolution.generateWorldGenome(seed + i, worldSize);
+        }
+        return population;
+    }
+
+    // BATCH MODE
+    static final String USAGE = String.join(System.lineSeparator(),
+            "usage: java ParameterSweep --key value ...",
+            "  --config FILE        properties file with any of the keys below",
+            "  --program P          agents (AgentEvolution) or levels (LevelEvolution)",
+            "  --world-size N       size of the random world (agents) or of every level",
+            "  --world-seed N       agents: seed of the random world (default 0)",
+            "  --worlds K           agents: score on K random worlds (see AgentEvolution)",
+            "  --world-score S      agents: mean or worst over the worlds (default mean)",
+            "  --generations N      number of generations of every run",
+            "  --populations LIST   population sizes, e.g. 100,200 or 100..105",
+            "  --mutation-rates LIST  mutation rates (default 0.05)",
+            "  --elitism LIST       fractions kept unchanged every generation (default 0.1)",
+            "  --tournaments LIST   tournament sizes of the parent selection, 0 = the",
+            "                       program's selection (default 0)",
+            "  --seeds LIST         seeds (default 0)",
+            "  --samples N          run N random points of the grid instead of all of them",
+            "                       (default 0 = all)",
+            "  --sample-seed N      seed of the sample (default 0)",
+            "  --threads N          runs at the same time (default: all cores)",
+            "  --out FILE           CSV with one line per run (default - = stdout)");
+
+    static int runBatch(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        if (Arrays.asList(args).contains("--help")) {
+            System.out.println(USAGE);
+            return BatchConfig.EXIT_OK;
+        }
+        try {
+            BatchConfig config = BatchConfig.parse(args, "program", "world-size", "world-seed", "worlds",
+                    "world-score", "generations", "populations", "mutation-rates", "elitism", "tournaments",
+                    "seeds", "samples", "sample-seed", "threads", "out");
+            String program = config.getString("program", "");
+            if (!program.equals("agents") && !program.equals("levels")) {
+                throw new IllegalArgumentException("program must be agents or levels: " + program);
+            }
+            boolean agents = program.equals("agents");
+            if (!agents && (config.has("world-seed") || config.has("worlds") || config.has("world-score"))) {
+                throw new IllegalArgumentException("--world-seed, --worlds and --world-score are for agents");
+            }
+            int size = config.getInt("world-size");
+            int generations = config.getInt("generations");
+            int samples = config.getInt("samples", 0);
+            int threads = config.getInt("threads", Runtime.getRuntime().availableProcessors());
+            Grid grid = new Grid(intList(config, "populations", null), doubleList(config, "mutation-rates", "0.05"),
+                    doubleList(config, "elitism", "0.1"), intList(config, "tournaments", "0"),
+                    intList(config, "seeds", "0"));
+
+            if (size < 1 || generations < 1 || threads < 1 || samples < 0) {
+                throw new IllegalArgumentException(
+                        "world size, generations and threads must be at least 1, samples not negative");
+            }
+            for (int population : grid.populations) {
+                if (population < 2) {
+                    throw new IllegalArgumentException("populations must be at least 2");
+                }
+            }
+            for (double rate : grid.mutationRates) {
+                if (!(rate >= 0 && rate <= 1)) {
+                    throw new IllegalArgumentException("mutation rates must be between 0 and 1");
+                }
+            }
+            for (double fraction : grid.elitism) {
+                if (!(fraction >= 0 && fraction <= 1)) {
+                    throw new IllegalArgumentException("elite fractions must be between 0 and 1");
+                }
+            }
+            for (int tournament : grid.tournaments) {
+                if (tournament < 0) {
+                    throw new IllegalArgumentException("tournament sizes must not be negative");
+                }
+            }
+            List<Point> points = grid.points(samples, config.getLong("sample-seed", 0));
+
+            int[] world = null;
+            WorldBatch worlds = null;
+            if (agents) {
+                world = AgentEvolution.worldFix(AgentEvolution.worldGenerate(size, config.getInt("world-seed", 0)));
+                if (config.has("worlds")) {
+                    WorldBatch.Score score = WorldBatch.Score.parse(config.getString("world-score", "mean"));
+                    worlds = WorldBatch.generate(config.getInt("worlds"), size, config.getInt("world-seed", 0),
+                            score);
+                }
+            }
+            int largest = Arrays.stream(grid.populations).max().getAsInt();
+            ParameterSweep sweep = new ParameterSweep(world, worlds, size, generations, largest);
+
+            PrintStream out = config.openStats("out");
+            out.println(HEADER);
+            sweep.run(points, threads, new Results(out, points.size()));
+            out.flush();
+            boolean failed = out.checkError();
+            if (out != System.out) {
+                out.close();
+            }
+            if (failed) {
+                System.err.println("ParameterSweep: could not write the results");
+                return BatchConfig.EXIT_FAILURE;
+            }
+            return BatchConfig.EXIT_OK;
+        } catch (IllegalArgumentException e) {
+            System.err.println("ParameterSweep: " + e.getMessage());
+            System.err.println(USAGE);
+            return BatchConfig.EXIT_USAGE;
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("ParameterSweep: " + e.getMessage());
+            return BatchConfig.EXIT_FAILURE;
+        }
+    }
+
+    // integers separated by commas, "a..b" for all of a to b
+    static int[] intList(BatchConfig config, String key, String defaultValue) {
+        if (defaultValue == null && !config.has(key)) {
+            throw new IllegalArgumentException("missing required parameter --" + key);
+        }
+        String value = config.getString(key, defaultValue);
+        List<Integer> values = new ArrayList<>();
+        try {
+            for (String part : value.split(",")) {
+                int range = part.indexOf("..");
+                if (range < 0) {
+                    values.add(Integer.parseInt(part.trim()));
+                    continue;
+                }
+                int from = Integer.parseInt(part.substring(0, range).trim());
+                int to = Integer.parseInt(part.substring(range + 2).trim());
+                if (to < from || (long) to - from >= 1 << 20) {
+                    throw new NumberFormatException();
+                }
+                for (int v = from; v <= to; v++) {
+                    values.add(v);
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("--" + key + " must be integers or ranges a..b: " + value);
+        }
+        return values.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // numbers separated by commas
+    static double[] doubleList(BatchConfig config, String key, String defaultValue) {
+        String value = config.getString(key, defaultValue);
+        String[] parts = value.split(",");
+        double[] values = new double[parts.length];
+        try {
+            for (int i = 0; i < parts.length; i++) {
+                values[i] = Double.parseDouble(parts[i].trim());
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("--" + key + " must be numbers: " + value);
+        }
+        return values;
+    }
+
+    public static void main(String[] args) {
+        System.exit(runBatch(args));
+    }
+}
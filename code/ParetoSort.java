@@ -0,0 +1,426 @@
+import java.util.Arrays;
+
+// non-dominated sorting and crowding distance for NSGA-II style selection,
+// every objective is minimized, point i has the objectives
+// values[i * m .. i * m + m)
+// fronts uses the divide and conquer sort of Jensen, with the corrections of
+// Fortin et al. for equal values, as formulated by Buzdalov and Shalyto:
+// O(N log^(M-1) N) instead of the O(M N^2) of comparing every pair
+// - the values are replaced by their ordinal per objective, so the recursion
+//   compares ints, and equal points are sorted once and share a front
+// - the points are sorted lexicographically, a point can only be dominated
+//   by the points before it, which takes care of objective 0
+// - helperA splits a set at the median of objective k and ranks both halves,
+//   helperB ranks the points of one set against the points of another set
+//   that is already ranked, and 2 objectives are left to a sweep over a
+//   Fenwick tree of the best rank per value of objective 1
+public final class ParetoSort {
+
+    private final int m;
+    private final int[] point; // ordinals of the distinct points in lexicographic order, point p at p * m
+    private final int[] rank;
+    private final int[] tree; // Fenwick tree, maximum rank per ordinal of objective 1, -1 for none
+    private final int[] scratch; // medians
+
+    private ParetoSort(int[] point, int count, int m, int values1) {
+        this.m = m;
+        this.point = point;
+        this.rank = new int[count];
+        this.tree = new int[values1];
+        this.scratch = new int[count];
+        Arrays.fill(tree, -1);
+    }
+
+    // front of every point: 0 for the points no other point dominates, 1 for
+    // the ones only dominated by front 0, ...
+    public static int[] fronts(double[] values, int n, int m) {
+        if (m < 1) {
+            throw new IllegalArgumentException("at least 1 objective needed");
+        }
+        int[] fronts = new int[n];
+        if (n == 0) {
+            return fronts;
+        }
+        int[] ordinals = new int[n * m];
+        int[] distinct = new int[m];
+        for (int k = 0; k < m; k++) {
+            distinct[k] = ordinals(values, n, m, k, ordinals);
+        }
+
+        // lexicographic order: stable sorts from the last objective to the first
+        int[] order = new int[n];
+        int[] sorted = new int[n];
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        for (int k = m - 1; k >= 0; k--) {
+            for (int j = 0; j < n; j++) {
+                keys[j] = (long) ordinals[order[j] * m + k] << 32 | j;
+            }
+            Arrays.sort(keys);
+            for (int j = 0; j < n; j++) {
+                sorted[j] = order[(int) keys[j]];
+            }
+            int[] swap = order;
+            order = sorted;
+            sorted = swap;
+        }
+
+        // the distinct points, equal points are neighbours now
+        int[] point = new int[n * m];
+        int[] pointOf = sorted; // point of every individual
+        int count = 0;
+        for (int j = 0; j < n; j++) {
+            int i = order[j];
+            if (count == 0 || !equal(ordinals, i * m, point, (count - 1) * m, m)) {
+                System.arraycopy(ordinals, i * m, point, count * m, m);
+                count++;
+            }
+            pointOf[i] = count - 1;
+        }
+
+        if (m == 1) {
+            // the ordinal is the front
+            for (int i = 0; i < n; i++) {
+                fronts[i] = ordinals[i];
+            }
+            return fronts;
+        }
+        ParetoSort sort = new ParetoSort(point, count, m, distinct[1]);
+        int[] all = new int[count];
+        for (int p = 0; p < count; p++) {
+            all[p] = p;
+        }
+        sort.helperA(all, m - 1);
+        for (int i = 0; i < n; i++) {
+            fronts[i] = sort.rank[pointOf[i]];
+        }
+        return fronts;
+    }
+
+    // crowding distance of every point within its front: for every objective
+    // the gap between its two neighbours in the front, relative to the range
+    // of the front, summed over the objectives, infinite for the points at
+    // either end of a front
+    public static double[] crowding(double[] values, int n, int m, int[] fronts) {
+        double[] distance = new double[n];
+        int frontCount = 0;
+        for (int i = 0; i < n; i++) {
+            frontCount = Math.max(frontCount, fronts[i] + 1);
+        }
+        int[] start = new int[frontCount + 1];
+        for (int i = 0; i < n; i++) {
+            start[fronts[i] + 1]++;
+        }
+        for (int f = 0; f < frontCount; f++) {
+            start[f + 1] += start[f];
+        }
+
+        int[] ordinals = new int[n * m];
+        long[] keys = new long[n];
+        int[] byFront = new int[n];
+        int[] next = new int[frontCount];
+        for (int k = 0; k < m; k++) {
+            ordinals(values, n, m, k, ordinals);
+            for (int i = 0; i < n; i++) {
+                keys[i] = (long) ordinals[i * m + k] << 32 | i;
+            }
+            Arrays.sort(keys);
+            // the fronts one after another, each in the order of objective k
+            System.arraycopy(start, 0, next, 0, frontCount);
+            for (int j = 0; j < n; j++) {
+                int i = (int) keys[j];
+                byFront[next[fronts[i]]++] = i;
+            }
+
+            for (int f = 0; f < frontCount; f++) {
+                int from = start[f];
+                int to = start[f + 1];
+                if (to - from < 3) {
+                    for (int j = from; j < to; j++) {
+                        distance[byFront[j]] = Double.POSITIVE_INFINITY;
+                    }
+                    continue;
+                }
+                distance[byFront[from]] = Double.POSITIVE_INFINITY;
+                distance[byFront[to - 1]] = Double.POSITIVE_INFINITY;
+                double range = values[byFront[to - 1] * m + k] - values[byFront[from] * m + k];
+                if (range > 0) {
+                    for (int j = from + 1; j < to - 1; j++) {
+                        distance[byFront[j]] += (values[byFront[j + 1] * m + k] - values[byFront[j - 1] * m + k])
+                                / range;
+                    }
+                }
+            }
+        }
+        return distance;
+    }
+
+    // one number that orders like the crowded comparison of NSGA-II, higher
+    // is better: a lower front first, then a larger crowding distance
+    public static double key(int front, double crowding) {
+        return -front + 0.5 * (crowding == Double.POSITIVE_INFINITY ? 1 : crowding / (1 + crowding));
+    }
+
+    // ordinals[i * m + k] = rank of the value of point i among the distinct
+    // values of objective k, returns the number of distinct values
+    private static int ordinals(double[] values, int n, int m, int k, int[] ordinals) {
+        double[] distinct = new double[n];
+        for (int i = 0; i < n; i++) {
+            distinct[i] = values[i * m + k] + 0.0; // -0.0 is 0.0
+        }
+        Arrays.sort(distinct);
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (count == 0 || Double.compare(distinct[i], distinct[count - 1]) != 0) {
+                distinct[count++] = distinct[i];
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            ordinals[i * m + k] = Arrays.binarySearch(distinct, 0, count, values[i * m + k] + 0.0);
+        }
+        return count;
+    }
+
+    private static boolean equal(int[] a, int from, int[] b, int bFrom, int length) {
+        for (int j = 0; j < length; j++) {
+            if (a[from + j] != b[bFrom + j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int value(int p, int k) {
+        return point[p * m + k];
+    }
+
+    // p is not worse than q in objectives 0..k, the callers make sure that
+    // p is better somewhere, so p dominates q
+    private boolean dominates(int p, int q, int k) {
+        for (int j = 0; j <= k; j++) {
+            if (value(p, j) > value(q, j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void raise(int p, int r) {
+        if (rank[p] < r) {
+            rank[p] = r;
+        }
+    }
+
+    // rank the points of s (ascending) among each other by objectives 0..k,
+    // they are equal in the objectives after k
+    private void helperA(int[] s, int k) {
+        if (s.length < 2) {
+            return;
+        }
+        if (s.length == 2) {
+            if (dominates(s[0], s[1], k)) {
+                raise(s[1], rank[s[0]] + 1);
+            }
+        } else if (k == 1) {
+            sweepA(s);
+        } else if (min(s, k) == max(s, k)) {
+            helperA(s, k - 1);
+        } else {
+            int median = median(s, null, k);
+            int[] low = split(s, k, median, -1);
+            int[] same = split(s, k, median, 0);
+            int[] high = split(s, k, median, 1);
+            helperA(low, k);
+            helperB(low, same, k - 1);
+            helperA(same, k - 1);
+            helperB(merge(low, same), high, k - 1);
+            helperA(high, k);
+        }
+    }
+
+    // raise the ranks of the points of h by the points of l (both ascending),
+    // which are ranked already: in the objectives after k every point of l is
+    // not worse than every point of h, and better in one of them
+    private void helperB(int[] l, int[] h, int k) {
+        if (l.length == 0 || h.length == 0) {
+            return;
+        }
+        if (l.length == 1 || h.length == 1) {
+            for (int q : h) {
+                for (int p : l) {
+                    if (dominates(p, q, k)) {
+                        raise(q, rank[p] + 1);
+                    }
+                }
+            }
+        } else if (k == 1) {
+            sweepB(l, h);
+        } else if (max(l, k) <= min(h, k)) {
+            helperB(l, h, k - 1);
+        } else if (min(l, k) <= max(h, k)) {
+            int median = median(l, h, k);
+            int[] lowL = split(l, k, median, -1);
+            int[] sameL = split(l, k, median, 0);
+            int[] highL = split(l, k, median, 1);
+            int[] lowH = split(h, k, median, -1);
+            int[] sameH = split(h, k, median, 0);
+            int[] highH = split(h, k, median, 1);
+            helperB(lowL, lowH, k);
+            helperB(lowL, sameH, k - 1);
+            helperB(sameL, sameH, k - 1);
+            helperB(merge(lowL, sameL), highH, k - 1);
+            helperB(highL, highH, k);
+        }
+    }
+
+    // objectives 0 and 1: in lexicographic order, every point is dominated by
+    // the earlier ones that are not worse in objective 1
+    private void sweepA(int[] s) {
+        for (int p : s) {
+            int best = query(value(p, 1));
+            if (best >= 0) {
+                raise(p, best + 1);
+            }
+            update(value(p, 1), rank[p]);
+        }
+        for (int p : s) {
+            clear(value(p, 1));
+        }
+    }
+
+    private void sweepB(int[] l, int[] h) {
+        int added = 0;
+        for (int q : h) {
+            while (added < l.length && l[added] < q) {
+                update(value(l[added], 1), rank[l[added]]);
+                added++;
+            }
+            int best = query(value(q, 1));
+            if (best >= 0) {
+                raise(q, best + 1);
+            }
+        }
+        for (int j = 0; j < added; j++) {
+            clear(value(l[j], 1));
+        }
+    }
+
+    // highest rank at an ordinal <= v
+    private int query(int v) {
+        int best = -1;
+        for (int i = v; i >= 0; i = (i & (i + 1)) - 1) {
+            best = Math.max(best, tree[i]);
+        }
+        return best;
+    }
+
+    private void update(int v, int r) {
+        for (int i = v; i < tree.length; i |= i + 1) {
+            tree[i] = Math.max(tree[i], r);
+        }
+    }
+
+    private void clear(int v) {
+        for (int i = v; i < tree.length; i |= i + 1) {
+            tree[i] = -1;
+        }
+    }
+
+    private int min(int[] s, int k) {
+        int min = Integer.MAX_VALUE;
+        for (int p : s) {
+            min = Math.min(min, value(p, k));
+        }
+        return min;
+    }
+
+    private int max(int[] s, int k) {
+        int max = Integer.MIN_VALUE;
+        for (int p : s) {
+            max = Math.max(max, value(p, k));
+        }
+        return max;
+    }
+
+    // median of objective k over a and b (b may be null), by quickselect
+    private int median(int[] a, int[] b, int k) {
+        int n = 0;
+        for (int p : a) {
+            scratch[n++] = value(p, k);
+        }
+        if (b != null) {
+            for (int p : b) {
+                scratch[n++] = value(p, k);
+            }
+        }
+        int target = n / 2;
+        int from = 0;
+        int to = n - 1;
+        while (from < to) {
+            int pivot = scratch[(from + to) >>> 1];
+            int i = from;
+            int j = to;
+            while (i <= j) {
+                while (scratch[i] < pivot) {
+                    i++;
+                }
+                while (scratch[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int swap = scratch[i];
+                    scratch[i] = scratch[j];
+                    scratch[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            if (target <= j) {
+                to = j;
+            } else if (target >= i) {
+                from = i;
+            } else {
+                break;
+            }
+        }
+        return scratch[target];
+    }
+
+    // the points of s whose objective k is below (side -1), equal to (0) or
+    // above (1) the median, still ascending
+    private int[] split(int[] s, int k, int median, int side) {
+        int count = 0;
+        for (int p : s) {
+            if (Integer.signum(value(p, k) - median) == side) {
+                count++;
+            }
+        }
+        int[] part = new int[count];
+        int n = 0;
+        for (int p : s) {
+            if (Integer.signum(value(p, k) - median) == side) {
+                part[n++] = p;
+            }
+        }
+        return part;
+    }
+
+    private static int[] merge(int[] a, int[] b) {
+        int[] merged = new int[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < a.length && j < b.length) {
+            merged[n++] = a[i] < b[j] ? a[i++] : b[j++];
+        }
+        while (i < a.length) {
+            merged[n++] = a[i++];
+        }
+        while (j < b.length) {
+            merged[n++] = b[j++];
+        }
+        return merged;
+    }
+}
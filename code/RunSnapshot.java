@@ -0,0 +1,347 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.concurrent.*;
+
+// binary snapshot of a running evolution, so a run that crashes or is
+// preempted can be resumed from its last snapshot instead of generation 0
+// a snapshot holds everything the generation loop of GeneticEngine carries
+// from one generation to the next: the population, the seed of its random
+// streams, the stagnation tracking of the mutation rate, the progress towards
+// the stopping criteria, the fitness of the population and the statistics so
+// far and the archive of novelty search, so the resumed run continues
+// exactly as the original one would have
+// (the time limit counts the time of the original run, but not the time
+// between the two)
+//
+// layout (big endian):
+// int MAGIC, int VERSION, byte engine, int generation (the next one to run),
+// int size, int genomeLength, long seed, double lastBest, int stagnation,
+// double bestSoFar, int sinceImprovement, long evaluations, long elapsedNanos
+// (of StoppingCriteria.Tracker, or -Infinity, 0, 0, 0),
+// generation x (double best, double average, double worst),
+// size x (double fitness, byte exact), see GeneticEngine.Evaluator.exact,
+// size x genomeLength gene bytes,
+// int archived, int nextSlot, int stride, archived x stride longs (the
+// packed genomes of the NoveltyArchive, 0, 0, 0 without novelty search)
+public class RunSnapshot {
+
+    static final int MAGIC = 0x45565350; // "EVSP"
+    static final int VERSION = 1;
+
+    // engines
+    static final byte AGENTS = 1; // AgentEvolution
+    static final byte LEVELS = 2; // LevelEvolution
+
+    private final byte engine;
+    private final int generation;
+    private final int[][] population;
+    private final long seed;
+    private final double lastBest;
+    private final int stagnation;
+    private final Progress progress;
+    private final double[] fitness;
+    private final boolean[] exact;
+    private final double[] best;
+    private final double[] average;
+    private final double[] worst;
+    private final int archived;
+    private final int nextSlot;
+    private final long[] archive;
+
+    private RunSnapshot(byte engine, int generation, int[][] population, long seed, double lastBest,
+            int stagnation, Progress progress, double[] fitness, boolean[] exact, double[] best, double[] average,
+            double[] worst, int archived, int nextSlot, long[] archive) {
+        this.engine = engine;
+        this.generation = generation;
+        this.population = population;
+        this.seed = seed;
+        this.lastBest = lastBest;
+        this.stagnation = stagnation;
+        this.progress = progress;
+        this.fitness = fitness;
+        this.exact = exact;
+        this.best = best;
+        this.average = average;
+        this.worst = worst;
+        this.archived = archived;
+        this.nextSlot = nextSlot;
+        this.archive = archive;
+    }
+
+    // read a snapshot through memory mapping
+    public static RunSnapshot load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(path + " is not a snapshot");
+            }
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                if (in.getInt() != MAGIC) {
+                    throw new IOException(path + " is not a snapshot");
+                }
+                int version = in.getInt();
+                if (version != VERSION) {
+                    throw new IOException(path + " is a snapshot of an unknown version " + version);
+                }
+                byte engine = in.get();
+                int generation = in.getInt();
+                int size = in.getInt();
+                int genomeLength = in.getInt();
+                long seed = in.getLong();
+                double lastBest = in.getDouble();
+                int stagnation = in.getInt();
+                Progress progress = new Progress(in.getDouble(), in.getInt(), in.getLong(), in.getLong());
+
+                double[] best = new double[generation];
+                double[] average = new double[generation];
+                double[] worst = new double[generation];
+                for (int g = 0; g < generation; g++) {
+                    best[g] = in.getDouble();
+                    average[g] = in.getDouble();
+                    worst[g] = in.getDouble();
+                }
+
+                double[] fitness = new double[size];
+                boolean[] exact = new boolean[size];
+                for (int i = 0; i < size; i++) {
+                    fitness[i] = in.getDouble();
+                    exact[i] = in.get() != 0;
+                }
+
+                int[][] population = new int[size][genomeLength];
+                byte[] genes = new byte[genomeLength];
+                for (int i = 0; i < size; i++) {
+                    in.get(genes);
+                    for (int j = 0; j < genomeLength; j++) {
+                        population[i][j] = genes[j];
+                    }
+                }
+
+                int archived = in.getInt();
+                int nextSlot = in.getInt();
+                long longs = (long) archived * in.getInt();
+                if (longs < 0 || longs > in.remaining() / 8) {
+                    throw new IOException(path + " is truncated");
+                }
+                long[] archive = new long[(int) longs];
+                in.asLongBuffer().get(archive);
+                in.position(in.position() + 8 * archive.length);
+                if (in.hasRemaining()) {
+                    throw new IOException(path + " has trailing bytes");
+                }
+                return new RunSnapshot(engine, generation, population, seed, lastBest, stagnation, progress, fitness,
+                        exact, best, average, worst, archived, nextSlot, archive);
+            } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+                throw new IOException(path + " is truncated", e);
+            }
+        }
+    }
+
+    // the snapshot for "engine", or an exception if it was written by another one
+    static RunSnapshot load(Path path, byte engine, int size, int genomeLength) {
+        try {
+            RunSnapshot snapshot = load(path);
+            if (snapshot.engine != engine) {
+                throw new IllegalArgumentException(path + " was written by another engine");
+            }
+            if (snapshot.population.length != size || snapshot.population[0].length != genomeLength) {
+                throw new IllegalArgumentException(path + " holds a population of another size");
+            }
+            return snapshot;
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot load snapshot", e);
+        }
+    }
+
+    // generation the resumed run starts with
+    public int generation() {
+        return generation;
+    }
+
+    public int[][] population() {
+        return population;
+    }
+
+    // seed of the stateless random streams of the run
+    public long seed() {
+        return seed;
+    }
+
+    public double lastBest() {
+        return lastBest;
+    }
+
+    public int stagnation() {
+        return stagnation;
+    }
+
+    // copy the fitness of the population and whether it is exact
+    public void fitness(double[] fitness, boolean[] exact) {
+        System.arraycopy(this.fitness, 0, fitness, 0, this.fitness.length);
+        System.arraycopy(this.exact, 0, exact, 0, this.exact.length);
+    }
+
+    // continue the progress towards the stopping criteria in "tracker"
+    public void restore(StoppingCriteria.Tracker tracker) {
+        tracker.restore(progress.bestSoFar, progress.sinceImprovement, progress.evaluations, progress.elapsedNanos);
+    }
+
+    // continue the novelty archive of the original run in "novelty", an
+    // exception if that run searched other genomes
+    public void restore(NoveltyArchive novelty) {
+        novelty.restore(archived, nextSlot, archive);
+    }
+
+    // copy the statistics of the finished generations into the arrays of a run
+    public void statistics(double[] best, double[] average, double[] worst) {
+        System.arraycopy(this.best, 0, best, 0, generation);
+        System.arraycopy(this.average, 0, average, 0, generation);
+        System.arraycopy(this.worst, 0, worst, 0, generation);
+    }
+
+    private static final class Progress {
+        final double bestSoFar;
+        final int sinceImprovement;
+        final long evaluations;
+        final long elapsedNanos;
+
+        Progress(double bestSoFar, int sinceImprovement, long evaluations, long elapsedNanos) {
+            this.bestSoFar = bestSoFar;
+            this.sinceImprovement = sinceImprovement;
+            this.evaluations = evaluations;
+            this.elapsedNanos = elapsedNanos;
+        }
+    }
+
+    // writes snapshots in the background: save copies the state into one of
+    // two buffers on the calling thread and a single I/O thread writes it to a
+    // temporary file that then replaces the snapshot, so the generation loop
+    // only waits if the write of the snapshot before the previous one has not
+    // finished yet, and a crash while writing leaves the last snapshot intact
+    public static class Writer implements Closeable {
+
+        private final Path path;
+        private final Path temporary;
+        private final byte engine;
+        private final ExecutorService io;
+        private final ByteBuffer[] buffers = new ByteBuffer[2];
+        private final Future<?>[] writing = new Future<?>[2];
+        private int next;
+
+        public Writer(Path path, byte engine) {
+            this.path = path;
+            this.temporary = path.resolveSibling(path.getFileName() + ".tmp");
+            this.engine = engine;
+            this.io = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "snapshot-writer");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        public Path path() {
+            return path;
+        }
+
+        // state of GeneticEngine: the current generation of the arena and its
+        // fitness, the seed of its random streams, the stagnation of the best
+        // fitness, the progress towards the stopping criteria and the novelty
+        // archive (both null if the run has none)
+        public void save(int generation, GenomeArena arena, double[] fitness, boolean[] exact, long seed,
+                double lastBest, int stagnation, StoppingCriteria.Tracker stopping, NoveltyArchive novelty,
+                double[] best, double[] average, double[] worst) {
+            long archiveBytes = novelty != null ? 8L * novelty.archived() * novelty.stride() : 0;
+            ByteBuffer out = begin(generation, arena.size(), arena.genomeLength(), archiveBytes, seed, lastBest,
+                    stagnation, stopping);
+            for (int g = 0; g < generation; g++) {
+                out.putDouble(best[g]).putDouble(average[g]).putDouble(worst[g]);
+            }
+            for (int i = 0; i < arena.size(); i++) {
+                out.putDouble(fitness[i]).put((byte) (exact[i] ? 1 : 0));
+            }
+            out.put(arena.current(), 0, arena.size() * arena.genomeLength());
+            if (novelty != null) {
+                out.putInt(novelty.archived()).putInt(novelty.nextSlot()).putInt(novelty.stride());
+                LongBuffer archive = out.asLongBuffer();
+                novelty.archive(archive);
+                out.position(out.position() + 8 * archive.position());
+            } else {
+                out.putInt(0).putInt(0).putInt(0);
+            }
+            submit(out);
+        }
+
+        private ByteBuffer begin(int generation, int size, int genomeLength, long archiveBytes, long seed,
+                double lastBest, int stagnation, StoppingCriteria.Tracker stopping) {
+            int b = next;
+            next ^= 1;
+            await(b);
+
+            long bytes = 81L + 24L * generation + 9L * size + (long) size * genomeLength + archiveBytes;
+            if (bytes > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("population too large for a snapshot");
+            }
+            if (buffers[b] == null || buffers[b].capacity() < bytes) {
+                buffers[b] = ByteBuffer.allocate((int) bytes);
+            }
+            ByteBuffer out = buffers[b];
+            out.clear();
+            out.putInt(MAGIC).putInt(VERSION).put(engine).putInt(generation).putInt(size).putInt(genomeLength)
+                    .putLong(seed).putDouble(lastBest).putInt(stagnation);
+            if (stopping != null) {
+                out.putDouble(stopping.bestSoFar()).putInt(stopping.sinceImprovement())
+                        .putLong(stopping.evaluations()).putLong(stopping.elapsedNanos());
+            } else {
+                out.putDouble(Double.NEGATIVE_INFINITY).putInt(0).putLong(0).putLong(0);
+            }
+            return out;
+        }
+
+        private void submit(ByteBuffer out) {
+            out.flip();
+            writing[next ^ 1] = io.submit(() -> {
+                try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    while (out.hasRemaining()) {
+                        channel.write(out);
+                    }
+                    channel.force(false);
+                }
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                return null;
+            });
+        }
+
+        // wait for the write from buffer b, rethrowing its failure
+        private void await(int b) {
+            if (writing[b] == null) {
+                return;
+            }
+            try {
+                writing[b].get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while writing a snapshot", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof IOException ? new UncheckedIOException("cannot write snapshot " + path,
+                        (IOException) cause) : new IllegalStateException(cause);
+            } finally {
+                writing[b] = null;
+            }
+        }
+
+        // wait for the pending writes
+        @Override
+        public void close() {
+            try {
+                await(0);
+                await(1);
+            } finally {
+                io.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,291 @@
+import java.util.random.RandomGenerator;
+
+// selection on primitive fitness arrays, without boxing or allocation
+// individuals are ranked by fitness descending, ties by lower index first,
+// which is the same order a stable sort of the indices gives
+//
+// the static helpers work on an int[] of population indices ("order") that
+// the caller allocates once per run:
+// - partitionTop moves the k best to order[0..k) in O(n) (quickselect)
+// - selectTop does the same and also sorts those k
+//
+// parent selection is pluggable through Strategy: truncation, tournament,
+// rank and stochastic universal sampling
+public final class Selection {
+
+    private Selection() {
+    }
+
+    // picks parents for breeding, prepare is called once per generation and
+    // select may then be called from several threads at once
+    public interface Strategy {
+        void prepare(double[] fitness, RandomGenerator rand);
+
+        // parent for mating slot "slot" (slot 2 * i and 2 * i + 1 are the
+        // parents of child i), "rand" is the random stream of that child
+        int select(int slot, RandomGenerator rand);
+    }
+
+    // uniform among the best "fraction" of the population (at least one)
+    public static Strategy truncation(double fraction) {
+        if (!(fraction > 0 && fraction <= 1)) {
+            throw new IllegalArgumentException("truncation fraction must be in (0, 1]");
+        }
+        return new Strategy() {
+            private int[] order;
+            private int count;
+
+            @Override
+            public void prepare(double[] fitness, RandomGenerator rand) {
+                order = identity(order, fitness.length);
+                count = Math.max(1, (int) (fitness.length * fraction));
+                partitionTop(fitness, order, fitness.length, count);
+            }
+
+            @Override
+            public int select(int slot, RandomGenerator rand) {
+                return order[rand.nextInt(count)];
+            }
+        };
+    }
+
+    // best of "size" uniformly drawn individuals
+    public static Strategy tournament(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("tournament size must be at least 1");
+        }
+        return new Strategy() {
+            private double[] fitness;
+
+            @Override
+            public void prepare(double[] fitness, RandomGenerator rand) {
+                this.fitness = fitness;
+            }
+
+            @Override
+            public int select(int slot, RandomGenerator rand) {
+                return tournament(fitness, size, rand);
+            }
+        };
+    }
+
+    // linear ranking: rank r (0 = best) is picked with probability
+    // (2 * (n - r) - 1) / n^2, drawn as the better of two uniform ranks
+    public static Strategy rank() {
+        return new Strategy() {
+            private int[] order;
+
+            @Override
+            public void prepare(double[] fitness, RandomGenerator rand) {
+                order = identity(order, fitness.length);
+                sort(fitness, order, 0, fitness.length);
+            }
+
+            @Override
+            public int select(int slot, RandomGenerator rand) {
+                int n = order.length;
+                return order[Math.min(rand.nextInt(n), rand.nextInt(n))];
+            }
+        };
+    }
+
+    // stochastic universal sampling: fitness proportional (fitness is shifted
+    // so the worst individual has weight 0, equal fitness is uniform), all
+    // 2 * n mating slots are filled with one spin and then shuffled
+    public static Strategy stochasticUniversal() {
+        return new Strategy() {
+            private int[] pool;
+
+            @Override
+            public void prepare(double[] fitness, RandomGenerator rand) {
+                int n = fitness.length;
+                if (pool == null || pool.length != 2 * n) {
+                    pool = new int[2 * n];
+                }
+
+                double min = Double.POSITIVE_INFINITY;
+                double total = 0;
+                for (double f : fitness) {
+                    min = Math.min(min, f);
+                }
+                for (double f : fitness) {
+                    total += f - min;
+                }
+
+                if (total <= 0) {
+                    for (int s = 0; s < pool.length; s++) {
+                        pool[s] = s % n;
+                    }
+                } else {
+                    double step = total / pool.length;
+                    double pointer = rand.nextDouble() * step;
+                    double cumulative = fitness[0] - min;
+                    int i = 0;
+                    for (int s = 0; s < pool.length; s++, pointer += step) {
+                        while (cumulative <= pointer && i + 1 < n) {
+                            i++;
+                            cumulative += fitness[i] - min;
+                        }
+                        pool[s] = i;
+                    }
+                }
+
+                // shuffle so the parents of a child are not neighbours
+                for (int s = pool.length - 1; s > 0; s--) {
+                    int j = rand.nextInt(s + 1);
+                    int tmp = pool[s];
+                    pool[s] = pool[j];
+                    pool[j] = tmp;
+                }
+            }
+
+            @Override
+            public int select(int slot, RandomGenerator rand) {
+                return pool[slot % pool.length];
+            }
+        };
+    }
+
+    // strategy from its name: "truncation[:fraction]", "tournament[:size]",
+    // "rank" or "sus"
+    public static Strategy parse(String spec) {
+        String[] parts = spec.trim().split(":", 2);
+        try {
+            switch (parts[0]) {
+                case "truncation":
+                    return truncation(parts.length > 1 ? Double.parseDouble(parts[1]) : 0.5);
+                case "tournament":
+                    return tournament(parts.length > 1 ? Integer.parseInt(parts[1]) : 5);
+                case "rank":
+                    return rank();
+                case "sus":
+                    return stochasticUniversal();
+                default:
+                    throw new IllegalArgumentException("unknown selection: " + spec);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid selection parameter: " + spec);
+        }
+    }
+
+    // tournament of "size" uniformly drawn individuals, the first one drawn
+    // wins ties
+    public static int tournament(double[] fitness, int size, RandomGenerator rand) {
+        int bestIndex = rand.nextInt(fitness.length);
+        double bestFit = fitness[bestIndex];
+        for (int i = 1; i < size; i++) {
+            int idx = rand.nextInt(fitness.length);
+            if (fitness[idx] > bestFit) {
+                bestFit = fitness[idx];
+                bestIndex = idx;
+            }
+        }
+        return bestIndex;
+    }
+
+    // order reset to 0..n-1, reallocated only if it has the wrong size
+    public static int[] identity(int[] order, int n) {
+        if (order == null || order.length != n) {
+            order = new int[n];
+        }
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        return order;
+    }
+
+    // index of the best individual
+    public static int best(double[] fitness) {
+        int best = 0;
+        for (int i = 1; i < fitness.length; i++) {
+            if (fitness[i] > fitness[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    // rearrange order[0..length) so that order[0..k) holds the k best of them,
+    // in no particular order
+    public static void partitionTop(double[] fitness, int[] order, int length, int k) {
+        int lo = 0;
+        int hi = length - 1;
+        while (lo < hi && k > lo && k <= hi) {
+            int p = partition(fitness, order, lo, hi);
+            if (p < k) {
+                lo = p + 1;
+            } else {
+                hi = p - 1;
+            }
+        }
+    }
+
+    // rearrange order[0..length) so that order[0..k) holds the k best of them,
+    // sorted best first
+    public static void selectTop(double[] fitness, int[] order, int length, int k) {
+        partitionTop(fitness, order, length, k);
+        sort(fitness, order, 0, Math.min(k, length));
+    }
+
+    // sort order[from..to) best first
+    public static void sort(double[] fitness, int[] order, int from, int to) {
+        while (to - from > 16) {
+            int p = partition(fitness, order, from, to - 1);
+            // recurse into the smaller side, loop on the larger one
+            if (p - from < to - p) {
+                sort(fitness, order, from, p);
+                from = p + 1;
+            } else {
+                sort(fitness, order, p + 1, to);
+                to = p;
+            }
+        }
+        for (int i = from + 1; i < to; i++) {
+            int x = order[i];
+            int j = i - 1;
+            while (j >= from && better(fitness, x, order[j])) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = x;
+        }
+    }
+
+    // true if individual a ranks before individual b
+    static boolean better(double[] fitness, int a, int b) {
+        return fitness[a] > fitness[b] || (fitness[a] == fitness[b] && a < b);
+    }
+
+    // Lomuto partition of order[lo..hi] around the median of three, returns
+    // the final position of the pivot, better individuals end up left of it
+    private static int partition(double[] fitness, int[] order, int lo, int hi) {
+        int mid = (lo + hi) >>> 1;
+        if (better(fitness, order[mid], order[lo])) {
+            swap(order, mid, lo);
+        }
+        if (better(fitness, order[hi], order[lo])) {
+            swap(order, hi, lo);
+        }
+        if (better(fitness, order[hi], order[mid])) {
+            swap(order, hi, mid);
+        }
+        // median is now at mid, use it as the pivot at hi
+        swap(order, mid, hi);
+        int pivot = order[hi];
+
+        int store = lo;
+        for (int i = lo; i < hi; i++) {
+            if (better(fitness, order[i], pivot)) {
+                swap(order, i, store++);
+            }
+        }
+        swap(order, store, hi);
+        return store;
+    }
+
+    private static void swap(int[] order, int i, int j) {
+        int tmp = order[i];
+        order[i] = order[j];
+        order[j] = tmp;
+    }
+}
@@ -0,0 +1,81 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+// single-producer single-consumer ring of generation statistics: the
+// evolution loop offers one entry per generation and never waits, a reader
+// (LiveChart on the Swing thread) drains whatever has arrived
+// the producer writes a slot and then publishes it by moving the tail with a
+// release store, the consumer reads the tail with an acquire load, reads the
+// slots and frees them by moving the head, so neither side locks and each
+// field has one writer
+// if the reader falls a whole ring behind, new entries are dropped and
+// counted instead of waiting for it
+public final class StatsRing {
+
+    // called for every drained entry, oldest first
+    public interface Reader {
+        void entry(int generation, double best, double average, double worst);
+    }
+
+    private final int mask;
+    private final int[] generation;
+    private final double[] best;
+    private final double[] average;
+    private final double[] worst;
+
+    private final AtomicLong head = new AtomicLong(); // next entry to read, moved by the consumer
+    private final AtomicLong tail = new AtomicLong(); // next entry to write, moved by the producer
+    private final AtomicLong dropped = new AtomicLong(); // moved by the producer
+    private long knownHead; // the head as the producer last saw it
+
+    // a ring of at least "capacity" entries (rounded up to a power of two)
+    public StatsRing(int capacity) {
+        if (capacity < 1 || capacity > 1 << 24) {
+            throw new IllegalArgumentException("capacity must be in 1..2^24");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        mask = size - 1;
+        generation = new int[size];
+        best = new double[size];
+        average = new double[size];
+        worst = new double[size];
+    }
+
+    // producer side, false if the entry was dropped because the ring is full
+    public boolean offer(int gen, double bestFitness, double averageFitness, double worstFitness) {
+        long t = tail.getPlain();
+        if (t - knownHead > mask) {
+            knownHead = head.getAcquire();
+            if (t - knownHead > mask) {
+                dropped.setRelease(dropped.getPlain() + 1);
+                return false;
+            }
+        }
+        int slot = (int) t & mask;
+        generation[slot] = gen;
+        best[slot] = bestFitness;
+        average[slot] = averageFitness;
+        worst[slot] = worstFitness;
+        tail.setRelease(t + 1);
+        return true;
+    }
+
+    // consumer side, hands every entry that arrived to "reader", returns how many
+    public int drain(Reader reader) {
+        long h = head.getPlain();
+        long t = tail.getAcquire();
+        for (long i = h; i < t; i++) {
+            int slot = (int) i & mask;
+            reader.entry(generation[slot], best[slot], average[slot], worst[slot]);
+        }
+        head.setRelease(t);
+        return (int) (t - h);
+    }
+
+    // entries the producer could not publish so far
+    public long dropped() {
+        return dropped.getAcquire();
+    }
+}
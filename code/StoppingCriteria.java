@@ -0,0 +1,210 @@
+// when a run may end before its last generation, checked after every
+// generation once its statistics are out:
+// - the best fitness reached a target
+// - the best fitness did not improve for "patience" generations
+// - the population has converged: its diversity fell below a threshold
+// - the run used up its time or its evaluations
+// every criterion is off until it is set, setters return this like
+// EvolutionOptions, and a run keeps its own progress in a Tracker (islands
+// track their own and stop on their own), which goes into the snapshots of
+// the run so a resumed run stops where the original one would have
+//
+// diversity is the mean over all genes of the share of genomes that differ
+// from the most common value of that gene: 0 when all genomes are the same,
+// up to 1 - 1 / alphabet when every value is equally common
+public class StoppingCriteria {
+
+    private double targetFitness = Double.NaN;
+    private int patience;
+    private double minDiversity;
+    private long timeLimitNanos;
+    private long maxEvaluations;
+
+    // stop once the best fitness is at least "target"
+    public StoppingCriteria targetFitness(double target) {
+        this.targetFitness = target;
+        return this;
+    }
+
+    // stop after "generations" generations without a better best fitness
+    public StoppingCriteria patience(int generations) {
+        if (generations < 1) {
+            throw new IllegalArgumentException("patience must be at least 1 generation");
+        }
+        this.patience = generations;
+        return this;
+    }
+
+    // stop once the diversity of the population is below "diversity"
+    public StoppingCriteria minDiversity(double diversity) {
+        if (!(diversity > 0 && diversity < 1)) {
+            throw new IllegalArgumentException("minimum diversity must be between 0 and 1");
+        }
+        this.minDiversity = diversity;
+        return this;
+    }
+
+    // stop after the generation that used up "seconds" of wall-clock time
+    public StoppingCriteria timeLimit(double seconds) {
+        if (!(seconds > 0)) {
+            throw new IllegalArgumentException("time limit must be positive");
+        }
+        this.timeLimitNanos = (long) Math.min(Long.MAX_VALUE, seconds * 1e9);
+        return this;
+    }
+
+    // stop after the generation that used up "evaluations" fitness evaluations
+    public StoppingCriteria maxEvaluations(long evaluations) {
+        if (evaluations < 1) {
+            throw new IllegalArgumentException("evaluation budget must be at least 1");
+        }
+        this.maxEvaluations = evaluations;
+        return this;
+    }
+
+    // whether the engine has to measure the diversity of its population
+    public boolean needsDiversity() {
+        return minDiversity > 0;
+    }
+
+    // criteria from the batch options, null if none is given
+    // "--target-fitness finish" is "finish" (NaN if the engine has none)
+    static StoppingCriteria fromConfig(BatchConfig config, double finish) {
+        StoppingCriteria criteria = new StoppingCriteria();
+        boolean any = false;
+        if (config.has("target-fitness")) {
+            String target = config.getString("target-fitness", "");
+            if (target.equals("finish")) {
+                if (Double.isNaN(finish)) {
+                    throw new IllegalArgumentException("--target-fitness finish is only known for agents");
+                }
+                criteria.targetFitness(finish);
+            } else {
+                criteria.targetFitness(config.getDouble("target-fitness", 0));
+            }
+            any = true;
+        }
+        if (config.has("patience")) {
+            criteria.patience(config.getInt("patience"));
+            any = true;
+        }
+        if (config.has("min-diversity")) {
+            criteria.minDiversity(config.getDouble("min-diversity", 0));
+            any = true;
+        }
+        if (config.has("time-limit")) {
+            criteria.timeLimit(config.getDouble("time-limit", 0));
+            any = true;
+        }
+        if (config.has("max-evaluations")) {
+            criteria.maxEvaluations(config.getLong("max-evaluations", 0));
+            any = true;
+        }
+        return any ? criteria : null;
+    }
+
+    // progress of one run, the clock starts now
+    public Tracker start() {
+        return new Tracker();
+    }
+
+    public final class Tracker {
+
+        private long started = System.nanoTime();
+        private double bestSoFar = Double.NEGATIVE_INFINITY;
+        private int sinceImprovement;
+        private long evaluations;
+
+        // the progress of an earlier run, with "elapsedNanos" of its time
+        // used up, continued from now
+        public void restore(double bestSoFar, int sinceImprovement, long evaluations, long elapsedNanos) {
+            this.bestSoFar = bestSoFar;
+            this.sinceImprovement = sinceImprovement;
+            this.evaluations = evaluations;
+            this.started = System.nanoTime() - elapsedNanos;
+        }
+
+        public double bestSoFar() {
+            return bestSoFar;
+        }
+
+        public int sinceImprovement() {
+            return sinceImprovement;
+        }
+
+        public long evaluations() {
+            return evaluations;
+        }
+
+        public long elapsedNanos() {
+            return System.nanoTime() - started;
+        }
+
+        // generation done with "evaluations" more evaluations (the first one
+        // of a run including the evaluation of the first population), its
+        // best fitness and its diversity (only read if needsDiversity)
+        // returns why the run stops, null to go on
+        public String check(long evaluations, double best, double diversity) {
+            this.evaluations += evaluations;
+            if (best > bestSoFar) {
+                bestSoFar = best;
+                sinceImprovement = 0;
+            } else {
+                sinceImprovement++;
+            }
+
+            if (!Double.isNaN(targetFitness) && best >= targetFitness) {
+                return "target fitness " + targetFitness + " reached";
+            }
+            if (patience > 0 && sinceImprovement >= patience) {
+                return "no improvement for " + patience + " generations";
+            }
+            if (minDiversity > 0 && diversity < minDiversity) {
+                return "diversity " + diversity + " below " + minDiversity;
+            }
+            if (maxEvaluations > 0 && this.evaluations >= maxEvaluations) {
+                return "evaluation budget of " + maxEvaluations + " used";
+            }
+            if (timeLimitNanos > 0 && System.nanoTime() - started >= timeLimitNanos) {
+                return "time limit of " + timeLimitNanos / 1e9 + " s reached";
+            }
+            return null;
+        }
+    }
+
+    // tell why a run ends early: on stderr for headless runs, whose stdout
+    // may be the statistics, on stdout for interactive ones
+    static void report(String engine, EvolutionOptions options, int gen, String reason) {
+        IslandModel.Port port = options.migration();
+        String island = port != null ? "island " + port.island() + " " : "";
+        String message = engine + ": " + island + "stopped after generation " + gen + ", " + reason;
+        (options.headless() ? System.err : System.out).println(message);
+    }
+
+    // diversity of the current generation of an arena
+    public static double diversity(GenomeArena arena, int alphabet) {
+        int genomeLength = arena.genomeLength();
+        byte[] genes = arena.current();
+        // counts[gene * alphabet + value], one pass over the genomes in order
+        int[] counts = new int[genomeLength * alphabet];
+        for (int i = 0; i < arena.size(); i++) {
+            int offset = arena.offset(i);
+            for (int gene = 0; gene < genomeLength; gene++) {
+                counts[gene * alphabet + genes[offset + gene]]++;
+            }
+        }
+        return diversity(counts, arena.size(), genomeLength, alphabet);
+    }
+
+    private static double diversity(int[] counts, int size, int genomeLength, int alphabet) {
+        long differing = 0;
+        for (int gene = 0; gene < genomeLength; gene++) {
+            int most = 0;
+            for (int v = 0; v < alphabet; v++) {
+                most = Math.max(most, counts[gene * alphabet + v]);
+            }
+            differing += size - most;
+        }
+        return (double) differing / ((long) size * genomeLength);
+    }
+}
@@ -0,0 +1,137 @@
+// a world compiled into a next-state table for agent simulation
+// the world never changes during a run, so the checks done by
+// AgentEvolution.evaluation for every move always give the same answer for
+// the same (position, height, move) and can be looked up instead
+// a state is (position * 2 + height) * 5, so the next state of a move is just
+// next[state + move], and the finish states loop back to themselves, which
+// makes running past the finish harmless
+public class TransitionTable {
+
+    private static final int MOVES = 5;
+
+    private final int[] next;
+    private final int finishState;
+
+    private TransitionTable(int[] next, int finishState) {
+        this.next = next;
+        this.finishState = finishState;
+    }
+
+    public static TransitionTable compile(int[] world) {
+        if (world.length == 0) {
+            throw new IllegalArgumentException("world is empty");
+        }
+        int[] next = new int[world.length * 2 * MOVES];
+
+        for (int position = 0; position < world.length; position++) {
+            for (int height = 0; height <= 1; height++) {
+                int from = state(position, height);
+                for (int move = 0; move < MOVES; move++) {
+                    if (position + 1 == world.length) {
+                        // finish reached, nothing after matters
+                        next[from + move] = from;
+                        continue;
+                    }
+
+                    // same rules as AgentEvolution.evaluation
+                    int newPosition = position;
+                    int newHeight = height;
+                    if (move == 1) {
+                        if (world[position + 1] != 1 + height)
+                            newPosition++;
+                    } else if (move == 2) {
+                        if (height == 1 && world[position] != 1)
+                            newHeight = 0;
+                    } else if (move == 3) {
+                        if (position != 0 && world[position - 1] != 1 + height)
+                            newPosition--;
+                    } else if (move == 4) {
+                        if (height == 0 && world[position] != 2)
+                            newHeight = 1;
+                    }
+                    next[from + move] = state(newPosition, newHeight);
+                }
+            }
+        }
+
+        return new TransitionTable(next, state(world.length - 1, 0));
+    }
+
+    // number of entries of the table (states x moves)
+    int size() {
+        return next.length;
+    }
+
+    int finishState() {
+        return finishState;
+    }
+
+    // copy the table to dest[offset..offset + size()) with every state moved
+    // up by offset, so several tables can be run from one array (see WorldBatch)
+    void copyTo(int[] dest, int offset) {
+        for (int i = 0; i < next.length; i++) {
+            dest[offset + i] = next[i] + offset;
+        }
+    }
+
+    // state at the start of every simulation
+    public static int start() {
+        return 0;
+    }
+
+    public static int state(int position, int height) {
+        return (position * 2 + height) * MOVES;
+    }
+
+    public static int position(int state) {
+        return state / (2 * MOVES);
+    }
+
+    public static int height(int state) {
+        return (state / MOVES) & 1;
+    }
+
+    public boolean isFinish(int state) {
+        return state >= finishState;
+    }
+
+    public int step(int state, int move) {
+        return next[state + move];
+    }
+
+    // apply genes[from..to) starting in "state", returns the state reached
+    public int run(byte[] genes, int from, int to, int state) {
+        int[] next = this.next;
+        for (int i = from; i < to; i++) {
+            state = next[state + genes[i]];
+        }
+        return state;
+    }
+
+    public int run(int[] moves, int from, int to, int state) {
+        int[] next = this.next;
+        for (int i = from; i < to; i++) {
+            state = next[state + moves[i]];
+        }
+        return state;
+    }
+
+    // same result as AgentEvolution.evaluation(world, agentMoves)
+    // moves are applied in blocks without any check, the finish is only
+    // tested between blocks
+    public int evaluate(int[] agentMoves) {
+        int state = start();
+        for (int i = 0; i < agentMoves.length && !isFinish(state); i += 64) {
+            state = run(agentMoves, i, Math.min(i + 64, agentMoves.length), state);
+        }
+        return position(state);
+    }
+
+    public int evaluate(byte[] genes, int offset, int length) {
+        int state = start();
+        for (int i = offset; i < offset + length && !isFinish(state); i += 64) {
+            state = run(genes, i, Math.min(i + 64, offset + length), state);
+        }
+        return position(state);
+    }
+}
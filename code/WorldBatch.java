@@ -0,0 +1,138 @@
+// a batch of K worlds that every agent is scored on, so agents are evolved to
+// cross generated worlds in general instead of one layout
+// the fitness is the mean or the worst position over the worlds
+//
+// the K worlds are compiled into TransitionTables stored back to back in one
+// array, world k starting at state base[k], so one array serves all worlds
+// (WorldBatchEvaluator runs a population on them)
+public class WorldBatch {
+
+    private static final int MOVES_PER_CHECK = 64;
+
+    public enum Score {
+        // mean position over the worlds (rounded down)
+        MEAN,
+        // position in the world the agent does worst in
+        WORST;
+
+        public static Score parse(String name) {
+            switch (name.trim()) {
+                case "mean":
+                    return MEAN;
+                case "worst":
+                    return WORST;
+                default:
+                    throw new IllegalArgumentException("unknown world score: " + name);
+            }
+        }
+    }
+
+    private final Score score;
+    private final int worlds;
+    private final int[] next; // all tables
+    private final int[] base; // start state of every world
+    private final int[] finish; // first finish state of every world
+    private final long[] reachable; // sum of the last positions of worlds k..K-1
+
+    public WorldBatch(int[][] worlds, Score score) {
+        if (worlds.length == 0) {
+            throw new IllegalArgumentException("no worlds");
+        }
+        this.score = score;
+        this.worlds = worlds.length;
+        this.base = new int[worlds.length];
+        this.finish = new int[worlds.length];
+        this.reachable = new long[worlds.length + 1];
+
+        TransitionTable[] tables = new TransitionTable[worlds.length];
+        long size = 0;
+        for (int k = 0; k < worlds.length; k++) {
+            tables[k] = TransitionTable.compile(worlds[k]);
+            size += tables[k].size();
+        }
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("worlds too large for one batch");
+        }
+        this.next = new int[(int) size];
+        int offset = 0;
+        for (int k = 0; k < worlds.length; k++) {
+            tables[k].copyTo(next, offset);
+            base[k] = offset;
+            finish[k] = offset + tables[k].finishState();
+            offset += tables[k].size();
+        }
+        for (int k = worlds.length - 1; k >= 0; k--) {
+            reachable[k] = reachable[k + 1] + worlds[k].length - 1;
+        }
+    }
+
+    // K random worlds of the given size, from seeds firstSeed, firstSeed + 1, ...
+    // (see AgentEvolution.worldGenerate and worldFix)
+    public static WorldBatch generate(int count, int size, int firstSeed, Score score) {
+        if (count < 1 || size < 1) {
+            throw new IllegalArgumentException("need at least 1 world of at least 1 cell");
+        }
+        int[][] worlds = new int[count][];
+        for (int k = 0; k < count; k++) {
+            worlds[k] = AgentEvolution.worldFix(AgentEvolution.worldGenerate(size, firstSeed + k));
+        }
+        return new WorldBatch(worlds, score);
+    }
+
+    public int worlds() {
+        return worlds;
+    }
+
+    public Score score() {
+        return score;
+    }
+
+    // exact fitness of one agent
+    public int evaluate(int[] moves) {
+        long sum = 0;
+        int worst = Integer.MAX_VALUE;
+        for (int k = 0; k < worlds; k++) {
+            int state = base[k];
+            for (int i = 0; i < moves.length && state < finish[k]; i += MOVES_PER_CHECK) {
+                int end = Math.min(i + MOVES_PER_CHECK, moves.length);
+                for (int j = i; j < end; j++) {
+                    state = next[state + moves[j]];
+                }
+            }
+            int position = TransitionTable.position(state - base[k]);
+            sum += position;
+            worst = Math.min(worst, position);
+        }
+        return score == Score.MEAN ? (int) (sum / worlds) : worst;
+    }
+
+    // start state of world k
+    int start(int k) {
+        return base[k];
+    }
+
+    // states of world k at or above this one are finish states
+    int finish(int k) {
+        return finish[k];
+    }
+
+    // position of a state of world k
+    int position(int k, int state) {
+        return TransitionTable.position(state - base[k]);
+    }
+
+    // sum of the last positions of worlds k..K-1, the most an agent can still
+    // add to its sum on them
+    long reachable(int k) {
+        return reachable[k];
+    }
+
+    // apply genes[from..to) starting in "state" (of any world)
+    int run(byte[] genes, int from, int to, int state) {
+        int[] next = this.next;
+        for (int i = from; i < to; i++) {
+            state = next[state + genes[i]];
+        }
+        return state;
+    }
+}
@@ -0,0 +1,279 @@
+import java.util.concurrent.ForkJoinPool;
+
+// evaluates the agents of a GenomeArena on a WorldBatch, the way
+// CheckpointEvaluator does on one world: for every agent and world it keeps
+// the simulation state every "interval" genes and the gene at which the
+// finish was reached, so a child is simulated on a world only from the last
+// checkpoint of parent1 before its first changed gene, and not at all if
+// parent1 had finished that world before it
+//
+// children are evaluated in blocks of BLOCK, and in a block world by world:
+// the table of one world stays in cache while the whole block runs on it
+// with a cutoff (the fitness of the worst elite carried into the generation)
+// a child stops being simulated as soon as it could not reach the cutoff even
+// by getting to the finish of every world left, so it cannot become an elite
+// and gets the score of the worlds it was run on (below the cutoff), exact()
+// tells the engine to leave it out of the statistics
+// the worlds it skipped have no checkpoints, its children are simulated on
+// them from the start
+//
+// arrays per agent and world are indexed by agent * K + world, and like the
+// arena they are double buffered: the current generation is read, the next
+// one is written, swap() flips them (the GeneticEngine.Evaluator of agents
+// on a batch of worlds)
+public class WorldBatchEvaluator implements GeneticEngine.Evaluator {
+
+    static final int BLOCK = 16;
+    private static final int NOT_RUN = -1; // finishedAt of a skipped world (or agent scored by the cache)
+
+    private final WorldBatch worlds;
+    private final GenomeArena arena;
+    private final int interval;
+    private final int stride; // checkpoints per agent and world
+    private final int count; // K
+
+    private int[] checkpoints;
+    private int[] nextCheckpoints;
+    // checkpoint gene at which the finish had been reached (genome length if
+    // only after the last gene), Integer.MAX_VALUE if never, NOT_RUN if skipped
+    private int[] finishedAt;
+    private int[] nextFinishedAt;
+    private int[] positions;
+    private int[] nextPositions;
+    private int[] fitness;
+    private int[] nextFitness;
+
+    // parent1 (-1 for none) and first changed gene of the slots of the next
+    // generation, set by evaluate
+    private int[] parents;
+    private int[] firstChanged;
+    private final int[] all; // 0..size-1
+
+    public WorldBatchEvaluator(WorldBatch worlds, GenomeArena arena, int interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("checkpoint interval must be positive");
+        }
+        this.worlds = worlds;
+        this.arena = arena;
+        this.interval = interval;
+        this.stride = arena.genomeLength() / interval + 1;
+        this.count = worlds.worlds();
+
+        int size = arena.size();
+        if ((long) size * count * stride > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("too many checkpoints for " + size + " agents on " + count + " worlds");
+        }
+        this.checkpoints = new int[size * count * stride];
+        this.nextCheckpoints = new int[size * count * stride];
+        this.finishedAt = new int[size * count];
+        this.nextFinishedAt = new int[size * count];
+        this.positions = new int[size * count];
+        this.nextPositions = new int[size * count];
+        this.fitness = new int[size];
+        this.nextFitness = new int[size];
+        this.all = Selection.identity(null, size);
+    }
+
+    // fitness of the current generation
+    public int[] fitness() {
+        return fitness;
+    }
+
+    // evaluate the whole current generation exactly, from the start
+    @Override
+    public void evaluateAll(ForkJoinPool pool, double[] fitness) {
+        inBlocks(pool, all, arena.size(), (from, to) -> evaluate(all, from, to, false, Integer.MIN_VALUE,
+                arena.current(), checkpoints, finishedAt, positions, this.fitness));
+        for (int i = 0; i < arena.size(); i++) {
+            fitness[i] = this.fitness[i];
+        }
+    }
+
+    // evaluate slots[0..count) of the next generation, children resume from
+    // their parent, and the ones that cannot reach "cutoff" any more are
+    // stopped
+    @Override
+    public void evaluate(ForkJoinPool pool, int[] slots, int count, int[] parents, int[] firstChanged,
+            double cutoff, double[] fitness) {
+        this.parents = parents;
+        this.firstChanged = firstChanged;
+        int bound = (int) Math.max(Integer.MIN_VALUE, Math.ceil(cutoff));
+        inBlocks(pool, slots, count, (from, to) -> evaluate(slots, from, to, true, bound, arena.next(),
+                nextCheckpoints, nextFinishedAt, nextPositions, nextFitness));
+        for (int k = 0; k < count; k++) {
+            fitness[slots[k]] = nextFitness[slots[k]];
+        }
+    }
+
+    // the last world is only run if all of them were
+    @Override
+    public boolean exact(int slot) {
+        return nextFinishedAt[slot * count + count - 1] != NOT_RUN;
+    }
+
+    @Override
+    public void skip(int slot) {
+        for (int k = 0; k < count; k++) {
+            nextFinishedAt[slot * count + k] = NOT_RUN;
+        }
+    }
+
+    @Override
+    public void keep(int from, int to) {
+        copyToNext(from, to);
+    }
+
+    // copy individual "from" of the current generation unchanged into slot "to"
+    // of the next generation (elitism)
+    public void copyToNext(int from, int to) {
+        System.arraycopy(checkpoints, from * count * stride, nextCheckpoints, to * count * stride, count * stride);
+        System.arraycopy(finishedAt, from * count, nextFinishedAt, to * count, count);
+        System.arraycopy(positions, from * count, nextPositions, to * count, count);
+        nextFitness[to] = fitness[from];
+    }
+
+    // the next generation becomes the current one
+    @Override
+    public void swap() {
+        int[] tmp = checkpoints;
+        checkpoints = nextCheckpoints;
+        nextCheckpoints = tmp;
+
+        tmp = finishedAt;
+        finishedAt = nextFinishedAt;
+        nextFinishedAt = tmp;
+
+        tmp = positions;
+        positions = nextPositions;
+        nextPositions = tmp;
+
+        tmp = fitness;
+        fitness = nextFitness;
+        nextFitness = tmp;
+    }
+
+    private interface Range {
+        void run(int from, int to);
+    }
+
+    // blocks of BLOCK entries of slots[0..count)
+    private static void inBlocks(ForkJoinPool pool, int[] slots, int count, Range body) {
+        int blocks = (count + BLOCK - 1) / BLOCK;
+        AgentEvolution.parallelFor(pool, 0, blocks, b -> {
+            int start = b * BLOCK;
+            body.run(start, Math.min(start + BLOCK, count));
+        });
+    }
+
+    // agents slots[from..to) (at most BLOCK) of "genes", world by world,
+    // children resume from their parent, the results go to the given arrays
+    private void evaluate(int[] slots, int from, int to, boolean children, int cutoff, byte[] genes, int[] cps,
+            int[] finish, int[] pos, int[] fit) {
+        boolean mean = worlds.score() == WorldBatch.Score.MEAN;
+        long[] scores = new long[BLOCK];
+        int[] runs = new int[BLOCK]; // worlds every agent was run on
+        int[] agents = new int[BLOCK]; // entries of the block still in the race
+        int active = 0;
+        for (int b = 0; b < to - from; b++) {
+            scores[b] = mean ? 0 : Integer.MAX_VALUE;
+            runs[b] = 0;
+            agents[active++] = b;
+        }
+
+        for (int k = 0; k < count && active > 0; k++) {
+            int kept = 0;
+            for (int a = 0; a < active; a++) {
+                int b = agents[a];
+                int i = slots[from + b];
+                int position = children
+                        ? resume(i, k)
+                        : simulate(genes, i, k, 0, worlds.start(k), cps, finish);
+                pos[i * count + k] = position;
+
+                runs[b]++;
+                if (mean) {
+                    scores[b] += position;
+                    // finishing every world left would still be too little
+                    if (scores[b] + worlds.reachable(k + 1) >= (long) cutoff * count) {
+                        agents[kept++] = b;
+                    }
+                } else {
+                    scores[b] = Math.min(scores[b], position);
+                    if (scores[b] >= cutoff) {
+                        agents[kept++] = b;
+                    }
+                }
+            }
+            active = kept;
+        }
+
+        for (int b = 0; b < to - from; b++) {
+            int i = slots[from + b];
+            fit[i] = (int) (mean ? scores[b] / runs[b] : scores[b]);
+            for (int k = runs[b]; k < count; k++) {
+                finish[i * count + k] = NOT_RUN;
+            }
+        }
+    }
+
+    // position of child "child" of the next generation on world k, simulated
+    // from the checkpoints of its parent
+    private int resume(int child, int k) {
+        // a migrant has no parent
+        if (parents[child] < 0) {
+            return simulate(arena.next(), child, k, 0, worlds.start(k), nextCheckpoints, nextFinishedAt);
+        }
+        int genomeLength = arena.genomeLength();
+        int parent = parents[child] * count + k;
+        int slot = child * count + k;
+        int changed = firstChanged[child];
+        int parentFinish = finishedAt[parent];
+
+        // parent was not run on this world
+        if (parentFinish == NOT_RUN) {
+            return simulate(arena.next(), child, k, 0, worlds.start(k), nextCheckpoints, nextFinishedAt);
+        }
+
+        // parent reached the finish before the child differs from it
+        if (parentFinish <= changed) {
+            int used = parentFinish / interval + 1;
+            System.arraycopy(checkpoints, parent * stride, nextCheckpoints, slot * stride, Math.min(used, stride));
+            nextFinishedAt[slot] = parentFinish;
+            return positions[parent];
+        }
+
+        // resume from the last checkpoint at or before the first changed gene
+        int resume = Math.min(changed, genomeLength) / interval;
+        System.arraycopy(checkpoints, parent * stride, nextCheckpoints, slot * stride, resume + 1);
+        int state = checkpoints[parent * stride + resume];
+        return simulate(arena.next(), child, k, resume * interval, state, nextCheckpoints, nextFinishedAt);
+    }
+
+    // run genes [from, genomeLength) of agent "index" on world k starting in
+    // "state", recording checkpoints and the finish gene, returns the position
+    private int simulate(byte[] genes, int index, int k, int from, int state, int[] cps, int[] finish) {
+        int genomeLength = arena.genomeLength();
+        int offset = arena.offset(index);
+        int slot = index * count + k;
+        int cpBase = slot * stride;
+        int finishState = worlds.finish(k);
+
+        for (int i = from; i < genomeLength; i += interval) {
+            cps[cpBase + i / interval] = state;
+
+            // if an agent reaches the finish it doesnt matter what is after
+            if (state >= finishState) {
+                finish[slot] = i;
+                return worlds.position(k, state);
+            }
+
+            state = worlds.run(genes, offset + i, offset + Math.min(i + interval, genomeLength), state);
+        }
+
+        if (genomeLength % interval == 0) {
+            cps[cpBase + genomeLength / interval] = state;
+        }
+        finish[slot] = state >= finishState ? genomeLength : Integer.MAX_VALUE;
+        return worlds.position(k, state);
+    }
+}
@@ -0,0 +1,149 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// the Vector API side of LockstepEvaluator, in a source root of its own
+// because it only compiles and loads with the jdk.incubator.vector module
+// (javac and java --add-modules jdk.incubator.vector), LockstepEvaluator
+// looks it up by name and evaluates one agent at a time without it
+// one lane per agent: the positions and heights of a whole batch are one
+// vector each, every move is a gather of the world cells around the lane
+// positions, four masks (one per move rule) and blends
+// a lane whose agent reached the finish is masked out of every rule, like
+// the early return of AgentEvolution.evaluation, and the batch ends when all
+// lanes are retired or the genomes run out
+final class VectorLanes {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+    private static final int CHUNK = 64; // moves transposed at a time
+
+    private VectorLanes() {
+    }
+
+    // agents per batch, 8 with AVX2, 16 with AVX-512
+    static int lanes() {
+        return SPECIES.length();
+    }
+
+    // fitness[indices[k]] of agents[indices[k]] for k < count
+    static void evaluate(int[] world, int[][] agents, int[] indices, int count, int[] fitness) {
+        int longest = 0;
+        for (int k = 0; k < count; k++) {
+            longest = Math.max(longest, agents[indices[k]].length);
+        }
+        evaluate(world, agents, null, longest, indices, 0, count, fitness);
+    }
+
+    // fitness[indices[k]] of the genome at genes[indices[k] * genomeLength]
+    // for from <= k < to, the genomes of a GenomeArena generation
+    static void evaluate(int[] world, byte[] genes, int genomeLength, int[] indices, int from, int to,
+            int[] fitness) {
+        evaluate(world, null, genes, genomeLength, indices, from, to, fitness);
+    }
+
+    // the agents are int[] genomes, or with agents null byte genomes of
+    // "longest" genes
+    private static void evaluate(int[] world, int[][] agents, byte[] genes, int longest, int[] indices, int first,
+            int end, int[] fitness) {
+        int lanes = SPECIES.length();
+        int[] cells = neighbourhoods(world);
+        int[] moves = new int[CHUNK * lanes];
+        int[] at = new int[lanes];
+        int[] result = new int[lanes];
+
+        for (int from = first; from < end; from += lanes) {
+            int batch = Math.min(lanes, end - from);
+            IntVector position = IntVector.zero(SPECIES);
+            IntVector height = IntVector.zero(SPECIES);
+            VectorMask<Integer> running = position.compare(VectorOperators.NE, world.length - 1);
+
+            for (int step = 0; step < longest && running.anyTrue(); step += CHUNK) {
+                int steps = Math.min(CHUNK, longest - step);
+                if (agents != null) {
+                    transpose(agents, indices, from, batch, step, steps, lanes, moves);
+                } else {
+                    transpose(genes, longest, indices, from, batch, step, steps, lanes, moves);
+                }
+
+                for (int s = 0; s < steps; s++) {
+                    IntVector move = IntVector.fromArray(SPECIES, moves, s * lanes);
+                    position.intoArray(at, 0);
+                    IntVector around = IntVector.fromArray(SPECIES, cells, 0, at, 0);
+                    IntVector behind = around.and(3);
+                    IntVector here = around.lanewise(VectorOperators.LSHR, 2).and(3);
+                    IntVector ahead = around.lanewise(VectorOperators.LSHR, 4);
+                    // a cell of 1 + height blocks a step to the side
+                    IntVector blocking = height.add(1);
+                    VectorMask<Integer> low = height.eq(0);
+
+                    VectorMask<Integer> right = running.and(move.eq(1))
+                            .and(ahead.compare(VectorOperators.NE, blocking));
+                    VectorMask<Integer> down = running.and(move.eq(2)).and(low.not())
+                            .and(here.compare(VectorOperators.NE, 1));
+                    VectorMask<Integer> left = running.and(move.eq(3))
+                            .and(position.compare(VectorOperators.NE, 0))
+                            .and(behind.compare(VectorOperators.NE, blocking));
+                    VectorMask<Integer> up = running.and(move.eq(4)).and(low)
+                            .and(here.compare(VectorOperators.NE, 2));
+
+                    position = position.blend(position.add(1), right).blend(position.sub(1), left);
+                    height = height.blend(0, down).blend(1, up);
+                    running = position.compare(VectorOperators.NE, world.length - 1);
+                    if (!running.anyTrue()) {
+                        break;
+                    }
+                }
+            }
+
+            position.intoArray(result, 0);
+            for (int lane = 0; lane < batch; lane++) {
+                fitness[indices[from + lane]] = result[lane];
+            }
+        }
+    }
+
+    // cells[position] = world[position - 1] | world[position] << 2 | world[position + 1] << 4,
+    // so one gather gets all the cells a move looks at (0 past the ends, where
+    // the rules never look)
+    private static int[] neighbourhoods(int[] world) {
+        int[] cells = new int[world.length];
+        for (int position = 0; position < world.length; position++) {
+            int behind = position > 0 ? world[position - 1] : 0;
+            int ahead = position + 1 < world.length ? world[position + 1] : 0;
+            cells[position] = behind | world[position] << 2 | ahead << 4;
+        }
+        return cells;
+    }
+
+    // moves[s * lanes + lane] = move step + s of the agent of the lane, 0 (no
+    // movement) for empty lanes and genomes that ended
+    private static void transpose(int[][] agents, int[] indices, int from, int batch, int step, int steps,
+            int lanes, int[] moves) {
+        for (int lane = 0; lane < lanes; lane++) {
+            int[] agent = lane < batch ? agents[indices[from + lane]] : null;
+            int available = agent == null ? 0 : Math.max(0, Math.min(steps, agent.length - step));
+            for (int s = 0; s < available; s++) {
+                moves[s * lanes + lane] = agent[step + s];
+            }
+            for (int s = available; s < steps; s++) {
+                moves[s * lanes + lane] = 0;
+            }
+        }
+    }
+
+    // the same for genomes of genomeLength bytes
+    private static void transpose(byte[] genes, int genomeLength, int[] indices, int from, int batch, int step,
+            int steps, int lanes, int[] moves) {
+        for (int lane = 0; lane < lanes; lane++) {
+            int offset = lane < batch ? indices[from + lane] * genomeLength + step : 0;
+            int available = lane < batch ? Math.max(0, Math.min(steps, genomeLength - step)) : 0;
+            for (int s = 0; s < available; s++) {
+                moves[s * lanes + lane] = genes[offset + s];
+            }
+            for (int s = available; s < steps; s++) {
+                moves[s * lanes + lane] = 0;
+            }
+        }
+    }
+}